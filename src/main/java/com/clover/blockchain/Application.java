@@ -1,13 +1,19 @@
 package com.clover.blockchain;
 
 import com.clover.blockchain.block.Block;
+import com.clover.blockchain.block.BlockHeader;
+import com.clover.blockchain.kryo.Hash256Serializer;
 import com.clover.blockchain.transaction.TXInput;
 import com.clover.blockchain.transaction.TXOutput;
 import com.clover.blockchain.transaction.Transaction;
+import com.clover.blockchain.transaction.TxLocation;
+import com.clover.blockchain.util.Hash256;
 import com.esotericsoftware.kryo.kryo5.Kryo;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Scope;
 import springfox.documentation.builders.ApiInfoBuilder;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
@@ -25,7 +31,9 @@ public class Application {
         SpringApplication.run(Application.class, args);
     }
 
+    // prototype scoped, KryoSerializer asks for a new instance whenever its pool grows
     @Bean
+    @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
     public Kryo kryo() {
         Kryo kryo = new Kryo();
         kryo.register(HashMap.class);
@@ -37,6 +45,9 @@ public class Application {
         kryo.register(TXInput.class);
         kryo.register(TXOutput[].class);
         kryo.register(TXOutput.class);
+        kryo.register(TxLocation.class);
+        kryo.register(BlockHeader.class);
+        kryo.register(Hash256.class, new Hash256Serializer());
         return kryo;
     }
 
@@ -4,7 +4,8 @@ import com.clover.blockchain.pow.PowResult;
 import com.clover.blockchain.pow.ProofOfWork;
 import com.clover.blockchain.transaction.MerkleTree;
 import com.clover.blockchain.transaction.Transaction;
-import com.clover.blockchain.util.Constant;
+import com.clover.blockchain.util.Hash256;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
@@ -12,9 +13,11 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.apache.commons.codec.binary.Hex;
 
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.function.BooleanSupplier;
 
 @Data
 @AllArgsConstructor
@@ -22,43 +25,74 @@ import java.util.Arrays;
 @JsonInclude(JsonInclude.Include.NON_NULL)
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Block {
-    private String hash;
-    private String prevBlockHash;
+    private Hash256 hash;
+    private Hash256 prevBlockHash;
     private Transaction[] transactions;
     private long timeStamp;
     private long nonce;
+    private long height;
+    // root of the merkle tree over the transaction ids, committed to by the proof of work
+    @JsonIgnore
+    private byte[] merkleRoot;
+
+    // hex encoded in JSON, like the block hashes
+    @JsonProperty("merkleRoot")
+    public String merkleRootHex() {
+        return merkleRoot == null ? null : Hex.encodeHexString(merkleRoot);
+    }
 
     public static Block newGenesisBlock(Transaction coinbase) {
-        return Block.newBlock(Constant.ZERO_HASH, new Transaction[]{coinbase});
+        return Block.newBlock(Hash256.ZERO, new Transaction[]{coinbase}, 0);
     }
 
     // create new block
-    public static Block newBlock(String previousHash, Transaction[] transactions) {
-        Block block = new Block("", previousHash, transactions, Instant.now().getEpochSecond(), 0);
+    public static Block newBlock(Hash256 previousHash, Transaction[] transactions, long height) {
+        return Block.newBlock(previousHash, transactions, height, () -> false);
+    }
+
+    // create new block, null if mining was cancelled before a valid nonce was found
+    public static Block newBlock(Hash256 previousHash, Transaction[] transactions, long height, BooleanSupplier cancelled) {
+        Block block = new Block(null, previousHash, transactions, Instant.now().getEpochSecond(), 0, height, null);
+        block.setMerkleRoot(block.hashTransaction());
         ProofOfWork pow = ProofOfWork.newProofOfWork(block);
-        PowResult powResult = pow.run();
+        PowResult powResult = pow.run(cancelled);
+        if (powResult == null) {
+            return null;
+        }
         block.setHash(powResult.getHash());
         block.setNonce(powResult.getNonce());
         return block;
     }
 
-    // perform hash calculation on the transaction information in the block
+    // perform hash calculation on the transaction information in the block, see merkleRoot for the stored result
     public byte[] hashTransaction() {
+        return this.merkleTree().getRoot();
+    }
+
+    // merkle tree over the transaction ids of the block
+    public MerkleTree merkleTree() {
         byte[][] txIdArrays = new byte[this.getTransactions().length][];
         for (int i = 0; i < this.getTransactions().length; i++) {
             txIdArrays[i] = this.getTransactions()[i].getTxId();
         }
-        return new MerkleTree(txIdArrays).getRoot().getHash();
+        return new MerkleTree(txIdArrays);
+    }
+
+    // header of the block, without the transaction bodies
+    public BlockHeader toHeader() {
+        return new BlockHeader(hash, prevBlockHash, height, timeStamp, nonce, merkleRoot, false);
     }
 
     @Override
     public String toString() {
         return "Block{" +
-                "hash='" + hash + '\'' +
-                ", prevBlockHash='" + prevBlockHash + '\'' +
+                "hash=" + hash +
+                ", prevBlockHash=" + prevBlockHash +
                 ", transactions=" + Arrays.toString(transactions) +
                 ", timeStamp=" + timeStamp +
                 ", nonce=" + nonce +
+                ", height=" + height +
+                ", merkleRoot=" + this.merkleRootHex() +
                 '}';
     }
 }
@@ -0,0 +1,46 @@
+package com.clover.blockchain.block;
+
+import com.clover.blockchain.util.Hash256;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.commons.codec.binary.Hex;
+
+import java.util.Arrays;
+
+// block data without the transaction bodies, kept in memory by the HeaderChain
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BlockHeader {
+    private Hash256 hash;
+    private Hash256 prevBlockHash;
+    private long height;
+    private long timeStamp;
+    private long nonce;
+    @JsonIgnore
+    private byte[] merkleRoot;
+    // set by Blockchain#addBlock once the proof of work is checked, stored with the header
+    private boolean powValid;
+
+    // hex encoded in JSON, like the block hashes, so it can be compared with the root of a merkle proof
+    @JsonProperty("merkleRoot")
+    public String merkleRootHex() {
+        return merkleRoot == null ? null : Hex.encodeHexString(merkleRoot);
+    }
+
+    @Override
+    public String toString() {
+        return "BlockHeader{" +
+                "hash=" + hash +
+                ", prevBlockHash=" + prevBlockHash +
+                ", height=" + height +
+                ", timeStamp=" + timeStamp +
+                ", nonce=" + nonce +
+                ", merkleRoot=" + Arrays.toString(merkleRoot) +
+                ", powValid=" + powValid +
+                '}';
+    }
+}
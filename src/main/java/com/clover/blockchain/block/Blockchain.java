@@ -1,10 +1,18 @@
 package com.clover.blockchain.block;
 
+import com.clover.blockchain.pow.ProofOfWork;
+import com.clover.blockchain.service.BlockWriteBatch;
 import com.clover.blockchain.service.RocksDBService;
+import com.clover.blockchain.transaction.Mempool;
+import com.clover.blockchain.transaction.MerkleProof;
+import com.clover.blockchain.transaction.SignatureCheck;
+import com.clover.blockchain.transaction.SignatureVerifier;
 import com.clover.blockchain.transaction.TXInput;
-import com.clover.blockchain.transaction.TXOutput;
 import com.clover.blockchain.transaction.Transaction;
+import com.clover.blockchain.transaction.TxLocation;
+import com.clover.blockchain.transaction.UTXOSet;
 import com.clover.blockchain.util.Constant;
+import com.clover.blockchain.util.Hash256;
 import com.google.common.collect.Maps;
 import lombok.AllArgsConstructor;
 import lombok.Data;
@@ -12,14 +20,15 @@ import lombok.NoArgsConstructor;
 import lombok.extern.java.Log;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.lang3.ArrayUtils;
-import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPrivateKey;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.function.BooleanSupplier;
 
 @Data
 @AllArgsConstructor
@@ -28,18 +37,24 @@ import java.util.Map;
 @Slf4j
 public class Blockchain {
 
-    private String lastBlockHash;
+    private Hash256 lastBlockHash;
 
     private static RocksDBService rocksDBService;
 
+    private static HeaderChain headerChain;
+
+    private static Mempool mempool;
+
     @Autowired
-    public Blockchain(RocksDBService rocksDBService) {
+    public Blockchain(RocksDBService rocksDBService, HeaderChain headerChain, Mempool mempool) {
         this.rocksDBService = rocksDBService;
+        this.headerChain = headerChain;
+        this.mempool = mempool;
     }
 
     // restore blockchain data from database
     public static Blockchain initBlockchainFromDB() throws Exception {
-        String lastBlockHash = rocksDBService.getLastBlockHash();
+        Hash256 lastBlockHash = rocksDBService.getLastBlockHash();
         if (lastBlockHash == null) {
             throw new Exception("ERROR: Fail to init blockchain from db. ");
         }
@@ -48,74 +63,169 @@ public class Blockchain {
 
     // create a blockchain on wallet address
     public static Blockchain createBlockchain(String address) {
-        String lastBlockHash = rocksDBService.getLastBlockHash();
+        Hash256 lastBlockHash = rocksDBService.getLastBlockHash();
         log.info("Create BlockChain - lastBlockHash ->" + lastBlockHash);
-        if (StringUtils.isBlank(lastBlockHash)) {
+        if (lastBlockHash == null) {
             // create coinbase transaction
             Transaction coinbaseTX = Transaction.newCoinbaseTX(address, Constant.GENESIS_COINBASE_DATA);
             Block genesisBlock = Block.newGenesisBlock(coinbaseTX);
-            lastBlockHash = genesisBlock.getHash();
-            rocksDBService.putBlock(genesisBlock);
-            rocksDBService.putLastBlockHash(lastBlockHash);
+            Blockchain blockchain = new Blockchain(Hash256.ZERO);
+            blockchain.addBlock(genesisBlock);
+            return blockchain;
         }
         return new Blockchain(lastBlockHash);
     }
 
     // verify and mine transaction
     public Block mineBlock(Transaction[] transactions) throws Exception {
+        return this.mineBlock(transactions, () -> false);
+    }
+
+    // verify and mine transaction, null if cancelled returns true or another block becomes the tip while mining
+    public Block mineBlock(Transaction[] transactions, BooleanSupplier cancelled) throws Exception {
+        // the signatures of all transactions are checked together, spread over the verification pool
+        List<SignatureCheck> checks = new ArrayList<>();
         for (Transaction tx : transactions) {
-            if (!this.verifyTransactions(tx)) {
-                log.error("ERROR: Fail to mine block ! Invalid transaction ! tx=" + tx.toString());
-                throw new Exception("ERROR: Fail to mine block ! Invalid transaction ! ");
-            }
+            checks.addAll(this.signatureChecks(tx));
         }
-        String lastBlockHash = rocksDBService.getLastBlockHash();
-        if (lastBlockHash == null) {
+        SignatureCheck invalid = SignatureVerifier.findInvalid(checks);
+        if (invalid != null) {
+            log.error("ERROR: Fail to mine block ! Invalid transaction ! txId=" + Hex.encodeHexString(invalid.getTxId())
+                    + ", inputIndex=" + invalid.getInputIndex());
+            throw new Exception("ERROR: Fail to mine block ! Invalid transaction ! ");
+        }
+        BlockHeader tip = headerChain.getTip();
+        if (tip == null) {
             throw new Exception("ERROR: Fail to get last block hash ! ");
         }
 
-        Block block = Block.newBlock(lastBlockHash, transactions);
+        // a template on a stale tip can never be connected, so mining stops as soon as the tip moves
+        Block block = Block.newBlock(tip.getHash(), transactions, tip.getHeight() + 1,
+                () -> cancelled.getAsBoolean() || headerChain.getTip() != tip);
+        if (block == null) {
+            return null;
+        }
         this.addBlock(block);
         return block;
     }
 
+    // connect the block: block body, new tip and indexes are committed in one atomic write
+    // blocks are connected one at a time and only on top of the current tip
     public void addBlock(Block block) {
-        rocksDBService.putLastBlockHash(block.getHash());
-        rocksDBService.putBlock(block);
-        this.lastBlockHash = block.getHash();
+        synchronized (Blockchain.class) {
+            BlockHeader tip = headerChain.getTip();
+            Hash256 tipHash = tip == null ? Hash256.ZERO : tip.getHash();
+            if (!tipHash.equals(block.getPrevBlockHash())) {
+                log.error("Fail to add block ! block does not extend the tip ! tipHash=" + tipHash + ", block=" + block.getHash());
+                throw new RuntimeException("Fail to add block ! block does not extend the tip ! block=" + block.getHash());
+            }
+            // the header has to commit to the transactions of the block, then the proof of work is checked on the header alone
+            if (!Arrays.equals(block.getMerkleRoot(), block.hashTransaction())) {
+                log.error("Fail to add block ! merkle root mismatch ! block=" + block.getHash());
+                throw new RuntimeException("Fail to add block ! merkle root mismatch ! block=" + block.getHash());
+            }
+            BlockHeader header = block.toHeader();
+            if (!ProofOfWork.newProofOfWork(header).validate()) {
+                log.error("Fail to add block ! invalid proof of work ! block=" + block.getHash());
+                throw new RuntimeException("Fail to add block ! invalid proof of work ! block=" + block.getHash());
+            }
+            header.setPowValid(true);
+            try (BlockWriteBatch batch = rocksDBService.newBlockWriteBatch()) {
+                batch.putBlock(block);
+                batch.putBlockHeader(header);
+                batch.putLastBlockHash(block.getHash());
+                batch.putBlockHeight(block);
+                batch.putTxLocations(block);
+                batch.commit();
+            }
+            // the UTXO changes go through the write-back cache, blocks it has not flushed yet are replayed at startup
+            new UTXOSet().blockchain(this).update(block);
+            headerChain.append(header);
+            mempool.removeForBlock(block);
+            this.lastBlockHash = block.getHash();
+        }
+    }
+
+    // verify the transaction and queue it in the mempool until a block template picks it up
+    public void submitTransaction(Transaction tx) throws Exception {
+        if (!this.verifyTransactions(tx)) {
+            log.error("ERROR: Fail to submit transaction ! Invalid transaction ! tx=" + tx.toString());
+            throw new Exception("ERROR: Fail to submit transaction ! Invalid transaction ! ");
+        }
+        mempool.add(tx);
+    }
+
+    // height of the latest block, -1 if there is no chain yet
+    public long getChainHeight() {
+        return headerChain.getHeight();
+    }
+
+    // block at the given height, null if the chain is not that long
+    public Block getBlockByHeight(long height) {
+        BlockHeader header = headerChain.getHeader(height);
+        if (header == null) {
+            return null;
+        }
+        return rocksDBService.getBlock(header.getHash());
+    }
+
+    // latest count blocks, the tip first
+    public List<Block> getLastBlocks(int count) {
+        List<Block> blocks = new ArrayList<>();
+        for (BlockHeader header : headerChain.getLastHeaders(count)) {
+            blocks.add(rocksDBService.getBlock(header.getHash()));
+        }
+        return blocks;
+    }
+
+    // headers of up to limit blocks starting at fromHeight, in height order
+    // headers carry the proof of work result stored when their block was connected
+    public List<BlockHeader> getHeaders(long fromHeight, int limit) {
+        return headerChain.getHeaders(fromHeight, limit);
+    }
+
+    // header of the block with the given hash, null if it is not part of the chain
+    public BlockHeader getHeader(Hash256 blockHash) {
+        return headerChain.getHeader(blockHash);
+    }
+
+    // block read straight from disk, so paging through the chain does not evict the block cache
+    public Block readBlock(Hash256 blockHash) {
+        return rocksDBService.readBlock(blockHash);
     }
 
     public class BlockchainIterator {
 
-        private String currentBlockHash;
+        private Hash256 currentBlockHash;
 
-        public BlockchainIterator(String currentBlockHash) {
+        // block fetched by hashNext and handed out by the following next, so every block is fetched once
+        private Block nextBlock;
+
+        public BlockchainIterator(Hash256 currentBlockHash) {
             this.currentBlockHash = currentBlockHash;
         }
 
         public boolean hashNext() {
-            if (StringUtils.isBlank(currentBlockHash) || currentBlockHash.equals(Constant.ZERO_HASH)) {
-                return false;
-            }
-            Block lastBlock = rocksDBService.getBlock(currentBlockHash);
-            if (lastBlock == null) {
-                return false;
+            if (nextBlock != null) {
+                return true;
             }
-            // check if it is genesis block
-            if (lastBlock.getHash().equals(Constant.ZERO_HASH)) {
+            // the genesis block points to the zero hash
+            if (currentBlockHash == null || currentBlockHash.equals(Hash256.ZERO)) {
                 return false;
             }
-            return rocksDBService.getBlock(lastBlock.getHash()) != null;
+            nextBlock = rocksDBService.getBlock(currentBlockHash);
+            return nextBlock != null;
         }
 
 
         public Block next() {
-            Block currentBlock = rocksDBService.getBlock(currentBlockHash);
-            if (currentBlock != null) {
-                this.currentBlockHash = currentBlock.getPrevBlockHash();
-                return currentBlock;
+            if (!this.hashNext()) {
+                return null;
             }
-            return null;
+            Block currentBlock = nextBlock;
+            this.nextBlock = null;
+            this.currentBlockHash = currentBlock.getPrevBlockHash();
+            return currentBlock;
         }
     }
 
@@ -124,100 +234,76 @@ public class Blockchain {
         return new BlockchainIterator(lastBlockHash);
     }
 
-    // find all unspend transaction outputs
-    public Map<String, TXOutput[]> findAllUTXOs() {
-        Map<String, int[]> allSpentTXOs = this.getAllSpentTXOs();
-        Map<String, TXOutput[]> allUTXOs = Maps.newHashMap();
-        // iterate over transaction output in all blocks
-        for (BlockchainIterator blockchainIterator = this.getBlockchainIterator(); blockchainIterator.hashNext(); ) {
-            Block block = blockchainIterator.next();
-            for (Transaction transaction : block.getTransactions()) {
-
-                String txId = Hex.encodeHexString(transaction.getTxId());
-
-                int[] spentOutIndexArray = allSpentTXOs.get(txId);
-                TXOutput[] txOutputs = transaction.getOutputs();
-                for (int outIndex = 0; outIndex < txOutputs.length; outIndex++) {
-                    if (spentOutIndexArray != null && ArrayUtils.contains(spentOutIndexArray, outIndex)) {
-                        continue;
-                    }
-                    TXOutput[] UTXOArray = allUTXOs.get(txId);
-                    if (UTXOArray == null) {
-                        UTXOArray = new TXOutput[]{txOutputs[outIndex]};
-                    } else {
-                        UTXOArray = ArrayUtils.add(UTXOArray, txOutputs[outIndex]);
-                    }
-                    allUTXOs.put(txId, UTXOArray);
-                }
+    // Rebuild the transaction index from the blocks of the chain
+    public void reIndexTransactions() {
+        log.info("Start to reIndex transactions !");
+        try (BlockWriteBatch batch = rocksDBService.newBlockWriteBatch()) {
+            for (BlockchainIterator iterator = this.getBlockchainIterator(); iterator.hashNext(); ) {
+                batch.putTxLocations(iterator.next());
             }
+            batch.commit();
         }
-        return allUTXOs;
-    }
-
-    // query all spent transaction outputs in the blockchain from transaction inputs and return transaction id and it's corrosponding transaction output subscript address
-    private Map<String, int[]> getAllSpentTXOs() {
-        // Define TxId ——> spentOutIndex[], store the transaction ID and the index value of the spent transaction output array
-        Map<String, int[]> spentTXOs = Maps.newHashMap();
-        for (BlockchainIterator blockchainIterator = this.getBlockchainIterator(); blockchainIterator.hashNext(); ) {
-            Block block = blockchainIterator.next();
-
-            for (Transaction transaction : block.getTransactions()) {
-                // If it is a coinbase transaction, skip it directly, because there is no transaction output referencing the previous block
-                if (transaction.isCoinbase()) {
-                    continue;
-                }
-                for (TXInput txInput : transaction.getInputs()) {
-                    String inTxId = Hex.encodeHexString(txInput.getTxId());
-                    int[] spentOutIndexArray = spentTXOs.get(inTxId);
-                    if (spentOutIndexArray == null) {
-                        spentOutIndexArray = new int[]{txInput.getTxOutputIndex()};
-                    } else {
-                        spentOutIndexArray = ArrayUtils.add(spentOutIndexArray, txInput.getTxOutputIndex());
-                    }
-                    spentTXOs.put(inTxId, spentOutIndexArray);
-                }
-            }
+        log.info("ReIndex transactions finished ! ");
+    }
+
+    // Query transaction information through the transaction index, null if the transaction is unknown
+    public Transaction getTransaction(byte[] txId) {
+        TxLocation location = rocksDBService.getTxLocation(Hash256.of(txId));
+        if (location == null) {
+            return null;
         }
-        return spentTXOs;
+        Block block = rocksDBService.getBlock(location.getBlockHash());
+        return block.getTransactions()[location.getTxIndex()];
     }
 
+    // Proof that the transaction is part of its block, with the header of that block; null if the transaction is unknown
+    public TxInclusionProof getTransactionProof(byte[] txId) {
+        TxLocation location = rocksDBService.getTxLocation(Hash256.of(txId));
+        if (location == null) {
+            return null;
+        }
+        Block block = rocksDBService.getBlock(location.getBlockHash());
+        MerkleProof proof = block.merkleTree().getProof(location.getTxIndex());
+        return new TxInclusionProof(headerChain.getHeader(block.getHash()), proof);
+    }
 
     // Query transaction information based on transaction ID
-    private Transaction findTransaction(byte[] txId) throws Exception {
-        for (BlockchainIterator iterator = this.getBlockchainIterator(); iterator.hashNext(); ) {
-            Block block = iterator.next();
-            for (Transaction tx : block.getTransactions()) {
-                if (Arrays.equals(tx.getTxId(), txId)) {
-                    return tx;
-                }
-            }
+    public Transaction findTransaction(byte[] txId) throws Exception {
+        Transaction tx = this.getTransaction(txId);
+        if (tx == null) {
+            throw new Exception("ERROR: Can not found tx by txId ! ");
         }
-        throw new Exception("ERROR: Can not found tx by txId ! ");
+        return tx;
     }
 
     // sign the transaction
     public void signTransaction(Transaction tx, BCECPrivateKey privateKey) throws Exception {
         // First find the data of the previous multiple transactions referenced by the transaction input in this new transaction
-        Map<String, Transaction> prevTxMap = Maps.newHashMap();
+        Map<Hash256, Transaction> prevTxMap = Maps.newHashMap();
         for (TXInput txInput : tx.getInputs()) {
             Transaction prevTx = this.findTransaction(txInput.getTxId());
-            prevTxMap.put(Hex.encodeHexString(txInput.getTxId()), prevTx);
+            prevTxMap.put(Hash256.of(txInput.getTxId()), prevTx);
         }
         tx.sign(privateKey, prevTxMap);
     }
 
     // transaction signature verification
     private boolean verifyTransactions(Transaction tx) throws Exception {
+        return SignatureVerifier.verify(this.signatureChecks(tx));
+    }
+
+    // signature checks of the transaction inputs against the transactions they spend from
+    private List<SignatureCheck> signatureChecks(Transaction tx) throws Exception {
         if (tx.isCoinbase()) {
-            return true;
+            return List.of();
         }
-        Map<String, Transaction> prevTx = Maps.newHashMap();
+        Map<Hash256, Transaction> prevTx = Maps.newHashMap();
         for (TXInput txInput : tx.getInputs()) {
             Transaction transaction = this.findTransaction(txInput.getTxId());
-            prevTx.put(Hex.encodeHexString(txInput.getTxId()), transaction);
+            prevTx.put(Hash256.of(txInput.getTxId()), transaction);
         }
         try {
-            return tx.verify(prevTx);
+            return tx.signatureChecks(prevTx);
         } catch (Exception e) {
             log.error("Fail to verify transaction ! transaction invalid ! ", e);
             throw new RuntimeException("Fail to verify transaction ! transaction invalid ! ", e);
@@ -0,0 +1,156 @@
+package com.clover.blockchain.block;
+
+import com.clover.blockchain.service.RocksDBService;
+import com.clover.blockchain.util.Hash256;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory chain of block headers, indexed by height.
+ * Loaded from the height index and the stored headers at startup, without reading any block body,
+ * and extended whenever a block is connected,
+ * so height and tip queries never have to walk the chain.
+ */
+@Slf4j
+@Component
+public class HeaderChain {
+
+    private final RocksDBService rocksDBService;
+
+    // position in the list is the height of the block
+    private final List<BlockHeader> headers = new ArrayList<>();
+
+    private final Map<Hash256, BlockHeader> headersByHash = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    @Autowired
+    public HeaderChain(RocksDBService rocksDBService) {
+        this.rocksDBService = rocksDBService;
+    }
+
+    // load the headers of every block in height order
+    @PostConstruct
+    public void load() {
+        lock.writeLock().lock();
+        try {
+            headers.clear();
+            headersByHash.clear();
+            for (long height = 0; ; height++) {
+                Hash256 blockHash = rocksDBService.getBlockHash(height);
+                if (blockHash == null) {
+                    break;
+                }
+                BlockHeader header = rocksDBService.getBlockHeader(blockHash);
+                if (header == null) {
+                    log.error("Fail to load header chain ! header not found ! blockHash=" + blockHash);
+                    throw new RuntimeException("Fail to load header chain ! header not found ! blockHash=" + blockHash);
+                }
+                headers.add(header);
+                headersByHash.put(header.getHash(), header);
+            }
+            log.info("Header chain loaded ! height=" + (headers.size() - 1));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // extend the chain by a newly connected block
+    public void append(BlockHeader header) {
+        lock.writeLock().lock();
+        try {
+            if (header.getHeight() != headers.size()) {
+                log.error("Fail to append header ! height mismatch ! header=" + header);
+                throw new RuntimeException("Fail to append header ! height mismatch ! ");
+            }
+            if (!headers.isEmpty() && !headers.get(headers.size() - 1).getHash().equals(header.getPrevBlockHash())) {
+                log.error("Fail to append header ! header does not extend the tip ! header=" + header);
+                throw new RuntimeException("Fail to append header ! header does not extend the tip ! ");
+            }
+            headers.add(header);
+            headersByHash.put(header.getHash(), header);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // height of the tip, -1 for an empty chain
+    public long getHeight() {
+        lock.readLock().lock();
+        try {
+            return headers.size() - 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // header of the latest block, null for an empty chain
+    public BlockHeader getTip() {
+        lock.readLock().lock();
+        try {
+            return headers.isEmpty() ? null : headers.get(headers.size() - 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // header at the given height, null if the chain is not that long
+    public BlockHeader getHeader(long height) {
+        lock.readLock().lock();
+        try {
+            if (height < 0 || height >= headers.size()) {
+                return null;
+            }
+            return headers.get((int) height);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // header of the block with the given hash, null if it is not part of the chain
+    public BlockHeader getHeader(Hash256 blockHash) {
+        lock.readLock().lock();
+        try {
+            return headersByHash.get(blockHash);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // headers of up to limit blocks starting at fromHeight, in height order
+    public List<BlockHeader> getHeaders(long fromHeight, int limit) {
+        lock.readLock().lock();
+        try {
+            if (fromHeight < 0 || fromHeight >= headers.size()) {
+                return List.of();
+            }
+            int from = (int) fromHeight;
+            return new ArrayList<>(headers.subList(from, (int) Math.min((long) from + limit, headers.size())));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // headers of the latest count blocks, the tip first
+    public List<BlockHeader> getLastHeaders(int count) {
+        lock.readLock().lock();
+        try {
+            List<BlockHeader> lastHeaders = new ArrayList<>(Math.min(count, headers.size()));
+            for (int i = headers.size() - 1; i >= 0 && lastHeaders.size() < count; i--) {
+                lastHeaders.add(headers.get(i));
+            }
+            return lastHeaders;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
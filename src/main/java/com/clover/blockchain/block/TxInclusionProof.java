@@ -0,0 +1,15 @@
+package com.clover.blockchain.block;
+
+import com.clover.blockchain.transaction.MerkleProof;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// what a light client needs to check that a transaction is in the chain, without downloading the block
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TxInclusionProof {
+    private BlockHeader header;
+    private MerkleProof proof;
+}
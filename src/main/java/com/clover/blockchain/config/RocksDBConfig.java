@@ -1,20 +1,20 @@
 package com.clover.blockchain.config;
 
-import com.clover.blockchain.kryo.KryoSerializer;
-import com.google.common.collect.Maps;
+import jakarta.annotation.PreDestroy;
 import lombok.Data;
-import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.rocksdb.Options;
+import org.rocksdb.ColumnFamilyDescriptor;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.DBOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 
 @Data
 @Slf4j
@@ -33,63 +33,91 @@ public class RocksDBConfig {
     @Value("${rocksdb.last-bucket-key}")
     private String lastBlockKey;
 
+    @Value("${rocksdb.utxo-best-block-key}")
+    private String utxoBestBlockKey;
+
     @Value("${rocksdb.chainstate-bucket-key}")
     private String chainstateBucketKey;
 
-    private Map<String, byte[]> blocksBucket;
+    @Value("${rocksdb.meta-bucket-key}")
+    private String metaBucketKey;
+
+    @Value("${rocksdb.txindex-bucket-key}")
+    private String txIndexBucketKey;
+
+    @Value("${rocksdb.height-bucket-key}")
+    private String heightBucketKey;
+
+    @Value("${rocksdb.addrindex-bucket-key}")
+    private String addrIndexBucketKey;
+
+    @Value("${rocksdb.header-bucket-key}")
+    private String headerBucketKey;
+
+    @Value("${rocksdb.block-cache-max-bytes}")
+    private long blockCacheMaxBytes;
+
+    // one column family per bucket, every entry is stored under its own key
+    private ColumnFamilyHandle blocksHandle;
+
+    private ColumnFamilyHandle chainStateHandle;
+
+    private ColumnFamilyHandle metaHandle;
+
+    private ColumnFamilyHandle txIndexHandle;
 
-    @Getter
-    private Map<String, byte[]> chainStateBucket;
+    private ColumnFamilyHandle heightHandle;
 
-    @Autowired
-    private KryoSerializer serializer;
+    private ColumnFamilyHandle addrIndexHandle;
 
-    @Bean(destroyMethod = "close")
+    private ColumnFamilyHandle headerHandle;
+
+    private final List<ColumnFamilyHandle> columnFamilyHandles = new ArrayList<>();
+
+    private RocksDB db;
+
+    @Bean(destroyMethod = "")
     public RocksDB rocksDB() {
         RocksDB.loadLibrary();
-        Options options = new Options()
+        DBOptions options = new DBOptions()
                 .setCreateIfMissing(createIfMissing)
+                .setCreateMissingColumnFamilies(true)
                 .setDbLogDir(rocksDBDirectory);
+        List<ColumnFamilyDescriptor> descriptors = List.of(
+                new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY),
+                new ColumnFamilyDescriptor(blockBucketKey.getBytes(StandardCharsets.UTF_8)),
+                new ColumnFamilyDescriptor(chainstateBucketKey.getBytes(StandardCharsets.UTF_8)),
+                new ColumnFamilyDescriptor(metaBucketKey.getBytes(StandardCharsets.UTF_8)),
+                new ColumnFamilyDescriptor(txIndexBucketKey.getBytes(StandardCharsets.UTF_8)),
+                new ColumnFamilyDescriptor(heightBucketKey.getBytes(StandardCharsets.UTF_8)),
+                new ColumnFamilyDescriptor(addrIndexBucketKey.getBytes(StandardCharsets.UTF_8)),
+                new ColumnFamilyDescriptor(headerBucketKey.getBytes(StandardCharsets.UTF_8))
+        );
         try {
-            RocksDB db = RocksDB.open(options, rocksDBDirectory);
-            return initBlockBucket(db);
+            db = RocksDB.open(options, rocksDBDirectory, descriptors, columnFamilyHandles);
+            blocksHandle = columnFamilyHandles.get(1);
+            chainStateHandle = columnFamilyHandles.get(2);
+            metaHandle = columnFamilyHandles.get(3);
+            txIndexHandle = columnFamilyHandles.get(4);
+            heightHandle = columnFamilyHandles.get(5);
+            addrIndexHandle = columnFamilyHandles.get(6);
+            headerHandle = columnFamilyHandles.get(7);
+            return db;
         } catch (RocksDBException e) {
+            log.error("Error opening RocksDB ! ", e);
             throw new RuntimeException("Error opening RocksDB", e);
         }
     }
 
-    private RocksDB initBlockBucket(RocksDB db) {
-        try {
-            byte[] blockBucketKeyByte = serializer.serialize(blockBucketKey);
-            byte[] blockBucketBytes = db.get(blockBucketKeyByte);
-            if (blockBucketBytes != null) {
-                blocksBucket = (Map) serializer.deserialize(blockBucketBytes);
-            } else {
-                blocksBucket = new HashMap<>();
-                db.put(blockBucketKeyByte, serializer.serialize(blocksBucket));
-            }
-            return initChainStateBucket(db);
-        } catch (RocksDBException e) {
-            log.error("Fail to init block bucket ! ", e);
-            throw new RuntimeException("Fail to init block bucket ! ", e);
+    // column family handles have to be released before the database itself
+    @PreDestroy
+    public void closeRocksDB() {
+        for (ColumnFamilyHandle handle : columnFamilyHandles) {
+            handle.close();
         }
-    }
-
-    private RocksDB initChainStateBucket(RocksDB db) {
-        try {
-            byte[] chainstateBucketKeyByte = serializer.serialize(chainstateBucketKey);
-            byte[] chainstateBucketBytes = db.get(chainstateBucketKeyByte);
-            if (chainstateBucketBytes != null) {
-                chainStateBucket = (Map) serializer.deserialize(chainstateBucketBytes);
-            } else {
-                chainStateBucket = Maps.newHashMap();
-                db.put(chainstateBucketKeyByte, serializer.serialize(chainStateBucket));
-            }
-        } catch (RocksDBException e) {
-            log.error("Fail to init chainstate bucket ! ", e);
-            throw new RuntimeException("Fail to init chainstate bucket ! ", e);
+        if (db != null) {
+            db.close();
         }
-        return db;
     }
 
 }
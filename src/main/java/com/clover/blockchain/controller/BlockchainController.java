@@ -1,28 +1,47 @@
 package com.clover.blockchain.controller;
 
-import com.clover.blockchain.block.Block;
+import com.clover.blockchain.block.BlockHeader;
 import com.clover.blockchain.block.Blockchain;
-import com.clover.blockchain.pow.ProofOfWork;
+import com.clover.blockchain.block.TxInclusionProof;
+import com.clover.blockchain.pow.MiningJob;
+import com.clover.blockchain.service.MiningService;
+import com.clover.blockchain.transaction.PendingFundsException;
+import com.clover.blockchain.transaction.SignatureVerifier;
 import com.clover.blockchain.transaction.TXOutput;
 import com.clover.blockchain.transaction.Transaction;
+import com.clover.blockchain.transaction.UTXOCache;
+import com.clover.blockchain.transaction.UTXOReindexer;
 import com.clover.blockchain.transaction.UTXOSet;
 import com.clover.blockchain.util.Base58Check;
+import com.clover.blockchain.util.Hash256;
 import com.clover.blockchain.wallet.Wallet;
 import com.clover.blockchain.wallet.WalletUtils;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -31,12 +50,27 @@ import java.util.Set;
 @Slf4j
 public class BlockchainController {
 
+    // upper bound of blocks listed by one /blocks request
+    private static final int MAX_BLOCKS_PAGE_SIZE = 1000;
+
+    // upper bound of addresses answered by one /balances request
+    private static final int MAX_BALANCE_ADDRESSES = 100_000;
+
     @Autowired
     private Blockchain blockChain;
 
     @Autowired
     private ObjectMapper mapper;
 
+    @Autowired
+    private MiningService miningService;
+
+    @Autowired
+    private UTXOCache utxoCache;
+
+    @Autowired
+    private UTXOReindexer utxoReindexer;
+
     @GetMapping("/create_wallet")
     public ResponseEntity createWaller() {
         Wallet wallet = WalletUtils.getInstance().createWallet();
@@ -90,28 +124,163 @@ public class BlockchainController {
         return new ResponseEntity<>(balanceMap, new HttpHeaders(), HttpStatus.OK);
     }
 
+    /**
+     * Balances of many wallet addresses at once, in the order of the request.
+     * Every balance is computed before the response starts, by seeking to each address in the address index,
+     * or for long lists by one pass over the whole index; only the writing of the JSON array is streamed.
+     */
+    @PostMapping(value = "/balances", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getBalances(@RequestBody List<String> walletAddresses) {
+        if (walletAddresses.size() > MAX_BALANCE_ADDRESSES) {
+            throw new RuntimeException("ERROR: too many addresses ! count=" + walletAddresses.size() + ", max=" + MAX_BALANCE_ADDRESSES);
+        }
+        List<byte[]> pubKeyHashes = new ArrayList<>(walletAddresses.size());
+        for (String walletAddress : walletAddresses) {
+            // Check if the wallet address is valid and get the public key Hash value
+            byte[] versionedPayload;
+            try {
+                versionedPayload = Base58Check.base58ToBytes(walletAddress);
+            } catch (Exception e) {
+                throw new RuntimeException("ERROR: invalid wallet address ! address=" + walletAddress, e);
+            }
+            pubKeyHashes.add(Arrays.copyOfRange(versionedPayload, 1, versionedPayload.length));
+        }
+        long[] balances = new UTXOSet().blockchain(blockChain).getBalances(pubKeyHashes);
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                for (int i = 0; i < balances.length; i++) {
+                    generator.writeStartObject();
+                    generator.writeStringField("Wallet_Address", walletAddresses.get(i));
+                    generator.writeStringField("Balance", String.valueOf(balances[i]));
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+        };
+        return new ResponseEntity<>(body, new HttpHeaders(), HttpStatus.OK);
+    }
+
     @PostMapping("/create_blockchain")
     public ResponseEntity testCreateBlockChain(String wallet_address) {
         Blockchain blockchain = Blockchain.createBlockchain(wallet_address);
         UTXOSet utxoSet = new UTXOSet().blockchain(blockchain);
         utxoSet.reIndex();
-        return new ResponseEntity<>(blockchain.getLastBlockHash(), new HttpHeaders(), HttpStatus.OK);
+        blockchain.reIndexTransactions();
+        return new ResponseEntity<>(blockchain.getLastBlockHash().toString(), new HttpHeaders(), HttpStatus.OK);
 
     }
 
-    @GetMapping("/print_blockchain")
-    public ResponseEntity testPrintBlockChain() throws Exception {
-        Map<Block, Boolean> blocks = new HashMap<>();
-        Blockchain blockchain = Blockchain.initBlockchainFromDB();
-
-        for (Blockchain.BlockchainIterator iterator = blockchain.getBlockchainIterator(); iterator.hashNext(); ) {
-            Block block = iterator.next();
-            if (block != null) {
-                boolean validate = ProofOfWork.newProofOfWork(block).validate();
-                blocks.put(block, validate);
+    /**
+     * Page through the chain in height order, streamed to the client as the blocks are read.
+     * The page starts at fromHeight, or right after the block given as cursor; nextCursor of the response continues
+     * with the following page and is null once the tip is reached.
+     * mode=headers lists the block headers only, mode=full adds the transactions of every block.
+     */
+    @GetMapping(value = "/blocks", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getBlocks(@RequestParam(defaultValue = "0") long fromHeight,
+                                                           @RequestParam(required = false) String cursor,
+                                                           @RequestParam(defaultValue = "100") int limit,
+                                                           @RequestParam(defaultValue = "headers") String mode) {
+        if (fromHeight < 0) {
+            throw new RuntimeException("ERROR: invalid fromHeight ! fromHeight=" + fromHeight);
+        }
+        if (limit < 1 || limit > MAX_BLOCKS_PAGE_SIZE) {
+            throw new RuntimeException("ERROR: invalid limit ! limit=" + limit + ", max=" + MAX_BLOCKS_PAGE_SIZE);
+        }
+        if (!"headers".equals(mode) && !"full".equals(mode)) {
+            throw new RuntimeException("ERROR: invalid mode ! mode=" + mode);
+        }
+        if (cursor != null) {
+            BlockHeader cursorHeader;
+            try {
+                cursorHeader = blockChain.getHeader(Hash256.fromHex(cursor));
+            } catch (IllegalArgumentException e) {
+                throw new RuntimeException("ERROR: invalid cursor ! cursor=" + cursor, e);
+            }
+            if (cursorHeader == null) {
+                return new ResponseEntity<>(new HttpHeaders(), HttpStatus.NOT_FOUND);
             }
+            fromHeight = cursorHeader.getHeight() + 1;
         }
-        return new ResponseEntity<>(blocks, new HttpHeaders(), HttpStatus.OK);
+        boolean full = "full".equals(mode);
+        // the page is fixed before streaming starts, blocks connected meanwhile show up on the next page
+        List<BlockHeader> headers = blockChain.getHeaders(fromHeight, limit);
+        long tipHeight = blockChain.getChainHeight();
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeNumberField("tipHeight", tipHeight);
+                generator.writeArrayFieldStart("blocks");
+                for (BlockHeader header : headers) {
+                    generator.writeStartObject();
+                    // the header carries the proof of work result stored when the block was connected
+                    generator.writeObjectField("header", header);
+                    if (full) {
+                        generator.writeObjectField("transactions", blockChain.readBlock(header.getHash()).getTransactions());
+                    }
+                    generator.writeEndObject();
+                    generator.flush();
+                }
+                generator.writeEndArray();
+                BlockHeader last = headers.isEmpty() ? null : headers.get(headers.size() - 1);
+                generator.writeStringField("nextCursor",
+                        last == null || last.getHeight() >= tipHeight ? null : last.getHash().toString());
+                generator.writeEndObject();
+            }
+        };
+        return new ResponseEntity<>(body, new HttpHeaders(), HttpStatus.OK);
+    }
+
+    @GetMapping("/utxo_cache_stats")
+    public ResponseEntity getUTXOCacheStats() {
+        return new ResponseEntity<>(utxoCache.getStats(), new HttpHeaders(), HttpStatus.OK);
+    }
+
+    @GetMapping("/utxo_reindex_progress")
+    public ResponseEntity getUTXOReindexProgress() {
+        return new ResponseEntity<>(utxoReindexer.getProgress(), new HttpHeaders(), HttpStatus.OK);
+    }
+
+    @GetMapping("/signature_cache_stats")
+    public ResponseEntity getSignatureCacheStats() {
+        return new ResponseEntity<>(SignatureVerifier.getCacheStats(), new HttpHeaders(), HttpStatus.OK);
+    }
+
+    @GetMapping("/tx/{txid}")
+    public ResponseEntity getTransaction(@PathVariable String txid) {
+        byte[] txId;
+        try {
+            txId = Hex.decodeHex(txid);
+        } catch (DecoderException e) {
+            throw new RuntimeException("ERROR: invalid txid ! txid=" + txid, e);
+        }
+        if (txId.length != Hash256.LENGTH) {
+            throw new RuntimeException("ERROR: invalid txid ! txid=" + txid);
+        }
+        Transaction transaction = blockChain.getTransaction(txId);
+        if (transaction == null) {
+            return new ResponseEntity<>("Transaction not found", new HttpHeaders(), HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(transaction, new HttpHeaders(), HttpStatus.OK);
+    }
+
+    @GetMapping("/tx/{txid}/proof")
+    public ResponseEntity getTransactionProof(@PathVariable String txid) {
+        byte[] txId;
+        try {
+            txId = Hex.decodeHex(txid);
+        } catch (DecoderException e) {
+            throw new RuntimeException("ERROR: invalid txid ! txid=" + txid, e);
+        }
+        if (txId.length != Hash256.LENGTH) {
+            throw new RuntimeException("ERROR: invalid txid ! txid=" + txid);
+        }
+        TxInclusionProof proof = blockChain.getTransactionProof(txId);
+        if (proof == null) {
+            return new ResponseEntity<>("Transaction not found", new HttpHeaders(), HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(proof, new HttpHeaders(), HttpStatus.OK);
     }
 
     @PostMapping("/send_coin")
@@ -133,12 +302,47 @@ public class BlockchainController {
         }
         Blockchain blockchain = Blockchain.createBlockchain(from_address);
         // new transaction
-        Transaction transaction = Transaction.newUTXOTransaction(from_address, to_address, amount, blockchain);
-        // award
-        Transaction rewardTx = Transaction.newCoinbaseTX(from_address, "");
-        Block newBlock = blockchain.mineBlock(new Transaction[]{transaction, rewardTx});
-        new UTXOSet().blockchain(blockchain).update(newBlock);
+        Transaction transaction;
+        try {
+            transaction = Transaction.newUTXOTransaction(from_address, to_address, amount, blockchain);
+        } catch (PendingFundsException e) {
+            // the change of an unmined send can not be spent yet, the sender has to wait for the mining job
+            return new ResponseEntity<>(e.getMessage(), new HttpHeaders(), HttpStatus.CONFLICT);
+        }
+        blockchain.submitTransaction(transaction);
+        // the transaction waits in the mempool for the next block, mined in the background and reported through /mining/jobs/{id}
+        MiningJob job = miningService.submit(from_address);
+
+        Map<String, String> rs = new HashMap<>();
+        rs.put("txid", Hex.encodeHexString(transaction.getTxId()));
+        rs.put("jobId", job.getId());
+        return new ResponseEntity<>(rs, new HttpHeaders(), HttpStatus.ACCEPTED);
+    }
+
+    @GetMapping("/mining/jobs/{id}")
+    public ResponseEntity getMiningJob(@PathVariable String id) {
+        MiningJob job = miningService.getJob(id);
+        if (job == null) {
+            return new ResponseEntity<>("Mining job not found", new HttpHeaders(), HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(job, new HttpHeaders(), HttpStatus.OK);
+    }
+
+    @GetMapping(value = "/mining/jobs/{id}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeMiningJob(@PathVariable String id) {
+        SseEmitter emitter = miningService.subscribe(id);
+        if (emitter == null) {
+            return new ResponseEntity<>(new HttpHeaders(), HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(emitter, new HttpHeaders(), HttpStatus.OK);
+    }
 
-        return new ResponseEntity<>(newBlock, new HttpHeaders(), HttpStatus.OK);
+    @DeleteMapping("/mining/jobs/{id}")
+    public ResponseEntity cancelMiningJob(@PathVariable String id) {
+        MiningJob job = miningService.cancel(id);
+        if (job == null) {
+            return new ResponseEntity<>("Mining job not found", new HttpHeaders(), HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(job, new HttpHeaders(), HttpStatus.OK);
     }
 }
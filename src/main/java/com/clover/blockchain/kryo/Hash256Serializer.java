@@ -0,0 +1,27 @@
+package com.clover.blockchain.kryo;
+
+import com.clover.blockchain.util.Hash256;
+import com.esotericsoftware.kryo.kryo5.Kryo;
+import com.esotericsoftware.kryo.kryo5.Serializer;
+import com.esotericsoftware.kryo.kryo5.io.Input;
+import com.esotericsoftware.kryo.kryo5.io.Output;
+
+// writes the 32 raw bytes of the hash, without a length prefix
+public class Hash256Serializer extends Serializer<Hash256> {
+
+    public Hash256Serializer() {
+        setImmutable(true);
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output, Hash256 hash) {
+        byte[] bytes = new byte[Hash256.LENGTH];
+        hash.copyTo(bytes, 0);
+        output.writeBytes(bytes);
+    }
+
+    @Override
+    public Hash256 read(Kryo kryo, Input input, Class<? extends Hash256> type) {
+        return Hash256.of(input.readBytes(Hash256.LENGTH));
+    }
+}
@@ -1,34 +1,152 @@
 package com.clover.blockchain.kryo;
 
 import com.esotericsoftware.kryo.kryo5.Kryo;
+import com.esotericsoftware.kryo.kryo5.io.ByteBufferOutput;
 import com.esotericsoftware.kryo.kryo5.io.Input;
 import com.esotericsoftware.kryo.kryo5.io.Output;
+import com.esotericsoftware.kryo.kryo5.util.Pool;
+import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
+
+/**
+ * Kryo instances are not thread-safe, so every call borrows a Kryo instance
+ * together with a reusable Input/Output buffer from thread-safe pools.
+ */
 @Component
 public class KryoSerializer {
 
-    private static Kryo kryo;
+    private static final int BUFFER_SIZE = 4096;
+
+    // pooled outputs that grew beyond this size get their buffer replaced before going back to the pool
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final byte[] EMPTY_BUFFER = new byte[0];
+
+    private static final ByteBuffer EMPTY_BYTE_BUFFER = ByteBuffer.allocate(0);
+
+    // upper bound of idle instances kept per pool, roughly the number of request threads
+    private static final int POOL_CAPACITY = 256;
+
+    private static Pool<Kryo> kryoPool;
+
+    private static Pool<Input> inputPool;
+
+    private static Pool<Output> outputPool;
+
+    // outputs over caller supplied, usually direct, buffers; they hold no buffer while pooled
+    private static Pool<ByteBufferOutput> byteBufferOutputPool;
 
     @Autowired
-    private KryoSerializer(Kryo kryo){
-        this.kryo = kryo;
+    public KryoSerializer(ObjectFactory<Kryo> kryoFactory) {
+        kryoPool = new Pool<>(true, false, POOL_CAPACITY) {
+            @Override
+            protected Kryo create() {
+                return kryoFactory.getObject();
+            }
+        };
+        inputPool = new Pool<>(true, false, POOL_CAPACITY) {
+            @Override
+            protected Input create() {
+                return new Input();
+            }
+        };
+        outputPool = new Pool<>(true, false, POOL_CAPACITY) {
+            @Override
+            protected Output create() {
+                return new Output(BUFFER_SIZE, -1);
+            }
+        };
+        byteBufferOutputPool = new Pool<>(true, false, POOL_CAPACITY) {
+            @Override
+            protected ByteBufferOutput create() {
+                return new ByteBufferOutput();
+            }
+        };
     }
 
     public static Object deserialize(byte[] bytes) {
-        Input input = new Input(bytes);
-        Object obj = kryo.readClassAndObject(input);
-        input.close();
-        return obj;
+        return deserialize(bytes, 0, bytes.length);
+    }
+
+    public static Object deserialize(byte[] bytes, int offset, int length) {
+        Kryo kryo = kryoPool.obtain();
+        Input input = inputPool.obtain();
+        try {
+            input.setBuffer(bytes, offset, length);
+            return kryo.readClassAndObject(input);
+        } finally {
+            input.setBuffer(EMPTY_BUFFER);
+            inputPool.free(input);
+            kryoPool.free(kryo);
+        }
     }
 
     public static byte[] serialize(Object object) {
-        Output output = new Output(4096, -1);
-        kryo.writeClassAndObject(output, object);
-        byte[] bytes = output.toBytes();
-        output.close();
-        return bytes;
+        Kryo kryo = kryoPool.obtain();
+        Output output = outputPool.obtain();
+        try {
+            output.reset();
+            kryo.writeClassAndObject(output, object);
+            return output.toBytes();
+        } finally {
+            if (output.getBuffer().length > MAX_POOLED_BUFFER_SIZE) {
+                output.setBuffer(new byte[BUFFER_SIZE], -1);
+            }
+            outputPool.free(output);
+            kryoPool.free(kryo);
+        }
+    }
+
+    /**
+     * Serialize straight into a caller supplied array, starting at offset
+     *
+     * @return number of bytes written
+     * @throws com.esotericsoftware.kryo.kryo5.io.KryoBufferOverflowException if the array is too small
+     */
+    public static int serialize(Object object, byte[] buffer, int offset) {
+        Kryo kryo = kryoPool.obtain();
+        Output output = outputPool.obtain();
+        byte[] pooledBuffer = output.getBuffer();
+        try {
+            output.setBuffer(buffer, buffer.length);
+            output.setPosition(offset);
+            kryo.writeClassAndObject(output, object);
+            return output.position() - offset;
+        } finally {
+            output.setBuffer(pooledBuffer, -1);
+            outputPool.free(output);
+            kryoPool.free(kryo);
+        }
+    }
+
+    /**
+     * Serialize straight into a caller supplied buffer, starting at its position.
+     * A buffer that is too small is replaced by a larger one of the same kind, at most maxBufferSize bytes,
+     * so callers keep the returned buffer for the next call instead of serializing twice.
+     *
+     * @return the buffer holding the bytes, positioned past them: the given one unless it had to grow
+     * @throws com.esotericsoftware.kryo.kryo5.io.KryoBufferOverflowException if the value exceeds maxBufferSize
+     */
+    public static ByteBuffer serialize(Object object, ByteBuffer buffer, int maxBufferSize) {
+        Kryo kryo = kryoPool.obtain();
+        ByteBufferOutput output = byteBufferOutputPool.obtain();
+        try {
+            // kryo writes up to the capacity, whatever the limit of the buffer
+            buffer.limit(buffer.capacity());
+            output.setBuffer(buffer, maxBufferSize);
+            kryo.writeClassAndObject(output, object);
+            ByteBuffer result = output.getByteBuffer();
+            result.limit(result.capacity());
+            result.position(output.position());
+            return result;
+        } finally {
+            output.setBuffer(EMPTY_BYTE_BUFFER, -1);
+            byteBufferOutputPool.free(output);
+            kryoPool.free(kryo);
+        }
     }
 
 }
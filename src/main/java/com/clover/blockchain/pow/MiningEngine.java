@@ -0,0 +1,161 @@
+package com.clover.blockchain.pow;
+
+import com.clover.blockchain.util.Hash256;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Multi-threaded nonce search.
+ * The nonce space is split across the worker threads, worker i tries the nonces i, i + n, i + 2n, ...
+ * Every worker hashes into its own reusable buffers and compares the raw digest against the target.
+ * The workers are threads of a fixed pool created once with the engine, blocks are mined one after another on it.
+ */
+@Slf4j
+@Component
+public class MiningEngine {
+
+    // how many nonces a worker tries between two checks for cancellation
+    private static final int CHECK_INTERVAL = 4096;
+
+    // the engine of the application context, proofs of work are run from static code
+    private static MiningEngine engine;
+
+    private final int threads;
+
+    private final ExecutorService workers;
+
+    @Autowired
+    public MiningEngine(@Value("${pow.threads}") int threads) {
+        // 0 keeps one worker per available core
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger workerIndex = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.threads, runnable -> {
+            Thread thread = new Thread(runnable, "pow-worker-" + workerIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        MiningEngine.engine = this;
+    }
+
+    public static int getThreads() {
+        return engine.threads;
+    }
+
+    /**
+     * Search a nonce whose hash is below the target
+     *
+     * @param prefix    constant part of the mining data, the 8 byte nonce is appended to it
+     * @param target    difficulty target as 32 byte big endian number
+     * @param cancelled polled by the workers, mining stops once it returns true
+     * @return the result, null if mining was cancelled
+     */
+    public static PowResult mine(byte[] prefix, byte[] target, BooleanSupplier cancelled) {
+        return engine.search(prefix, target, cancelled);
+    }
+
+    private PowResult search(byte[] prefix, byte[] target, BooleanSupplier cancelled) {
+        int workerCount = threads;
+        AtomicReference<PowResult> result = new AtomicReference<>();
+        AtomicLong hashes = new AtomicLong();
+        long startTime = System.nanoTime();
+        // set when the caller stops waiting, so the workers do not keep the pool busy
+        AtomicBoolean aborted = new AtomicBoolean();
+        BooleanSupplier stop = () -> aborted.get() || cancelled.getAsBoolean();
+
+        Future<?>[] tasks = new Future<?>[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            int workerIndex = i;
+            tasks[i] = workers.submit(() -> search(prefix, target, workerIndex, workerCount, stop, result, hashes));
+        }
+        try {
+            for (Future<?> task : tasks) {
+                task.get();
+            }
+        } catch (InterruptedException e) {
+            aborted.set(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("ERROR: Interrupted while mining ! ", e);
+        } catch (ExecutionException e) {
+            aborted.set(true);
+            throw new RuntimeException("ERROR: Fail to mine ! ", e.getCause());
+        }
+
+        double seconds = (System.nanoTime() - startTime) / 1e9;
+        double hashRate = hashes.get() / Math.max(seconds, 1e-9);
+        PowResult powResult = result.get();
+        if (powResult == null) {
+            log.info("POW cancelled after {} hashes, {} hashes/second", hashes.get(), (long) hashRate);
+            return null;
+        }
+        powResult.setHashes(hashes.get());
+        powResult.setHashRate(hashRate);
+        log.info("Elapsed Time: {} seconds, {} hashes, {} hashes/second on {} threads", seconds, hashes.get(), (long) hashRate, workerCount);
+        log.info("correct hash Hex: {}", powResult.getHash());
+        return powResult;
+    }
+
+    private static void search(byte[] prefix, byte[] target, long firstNonce, int stride, BooleanSupplier cancelled,
+                               AtomicReference<PowResult> result, AtomicLong hashes) {
+        byte[] data = Arrays.copyOf(prefix, prefix.length + Long.BYTES);
+        byte[] hash = new byte[32];
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        long count = 0;
+        try {
+            for (long nonce = firstNonce; nonce >= 0; nonce += stride) {
+                writeLong(data, prefix.length, nonce);
+                digest.update(data);
+                digest.digest(hash, 0, hash.length);
+                count++;
+                if (ProofOfWork.lessThan(hash, target)) {
+                    result.compareAndSet(null, new PowResult(nonce, Hash256.of(hash), 0, 0));
+                    return;
+                }
+                if (count % CHECK_INTERVAL == 0 && (result.get() != null || cancelled.getAsBoolean())) {
+                    return;
+                }
+            }
+        } catch (DigestException e) {
+            throw new RuntimeException("ERROR: Fail to hash mining data ! ", e);
+        } finally {
+            hashes.addAndGet(count);
+        }
+    }
+
+    // running searches are cancelled by their callers first, so the workers are idle or about to be
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("POW workers still running after shutdown ! ");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void writeLong(byte[] buffer, int offset, long value) {
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            buffer[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.clover.blockchain.pow;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// background mining of a block with the pending transactions, polled or subscribed to through the REST API
+@Data
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MiningJob {
+
+    public enum Status {
+        PENDING, RUNNING, COMPLETED, CANCELLED, FAILED
+    }
+
+    private String id;
+    private volatile Status status;
+    private String rewardAddress;
+    // transactions of the block template, known once the job runs
+    private volatile List<String> txIds;
+    private String blockHash;
+    private Long height;
+    private String error;
+    private long createTime;
+    private Long finishTime;
+
+    @JsonIgnore
+    private volatile boolean cancelRequested;
+
+    @JsonIgnore
+    private final List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+    public boolean isDone() {
+        return status == Status.COMPLETED || status == Status.CANCELLED || status == Status.FAILED;
+    }
+}
@@ -1,5 +1,6 @@
 package com.clover.blockchain.pow;
 
+import com.clover.blockchain.util.Hash256;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -11,6 +12,12 @@ import lombok.NoArgsConstructor;
 public class PowResult {
     private long nonce;
 
-    private String hash;
+    private Hash256 hash;
+
+    // number of hashes computed by all workers
+    private long hashes;
+
+    // hashes per second over all workers
+    private double hashRate;
 
 }
@@ -1,16 +1,18 @@
 package com.clover.blockchain.pow;
 
 import com.clover.blockchain.block.Block;
-import com.clover.blockchain.util.ByteUtils;
+import com.clover.blockchain.block.BlockHeader;
 import com.clover.blockchain.util.Constant;
+import com.clover.blockchain.util.Hash256;
+import com.clover.blockchain.util.HashUtils;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.digest.DigestUtils;
-import org.apache.commons.lang3.StringUtils;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.function.BooleanSupplier;
 
 @Data
 @AllArgsConstructor
@@ -18,58 +20,78 @@ import java.math.BigInteger;
 @Slf4j
 public class ProofOfWork {
 
-    private Block block;
+    private BlockHeader header;
 
     private BigInteger target;
 
     // Create a new proof-of-work, set a difficulty target
     // Do a bit shift by 1, shifting 1 to the left by (256 - TARGET_BITS) bits to get our difficulty target value
     public static ProofOfWork newProofOfWork(Block block) {
+        return newProofOfWork(block.toHeader());
+    }
+
+    // the proof of work only covers header fields, so headers are validated without the transactions
+    public static ProofOfWork newProofOfWork(BlockHeader header) {
         BigInteger targetValue = BigInteger.ONE.shiftLeft((256 - Constant.DIFFICULTY_TARGET_BITS));
-        return new ProofOfWork(block, targetValue);
+        return new ProofOfWork(header, targetValue);
     }
 
     // Note: When preparing block data, be sure to convert from the original data type to byte[], not directly from string
-    private byte[] prepareData(long nonce) {
+    // The prefix is everything but the nonce, it is the same for every mining attempt and computed once
+    private byte[] prepareHeaderPrefix() {
+        // the previous hash as unsigned number, as it was hashed when blocks referenced it in hex
         byte[] prevBlockHashBytes = {};
-        if (StringUtils.isNoneBlank(this.getBlock().getPrevBlockHash())) {
-            prevBlockHashBytes = new BigInteger(this.getBlock().getPrevBlockHash(), 16).toByteArray();
+        Hash256 prevBlockHash = this.getHeader().getPrevBlockHash();
+        if (prevBlockHash != null) {
+            prevBlockHashBytes = new BigInteger(1, prevBlockHash.getBytes()).toByteArray();
         }
 
-        return ByteUtils.merge(
-                prevBlockHashBytes,
-                this.getBlock().hashTransaction(),
-                ByteUtils.toBytes(this.getBlock().getTimeStamp()),
-                ByteUtils.toBytes(Constant.DIFFICULTY_TARGET_BITS),
-                ByteUtils.toBytes(nonce)
-        );
+        byte[] merkleRoot = this.getHeader().getMerkleRoot();
+        return ByteBuffer.allocate(prevBlockHashBytes.length + merkleRoot.length + 2 * Long.BYTES)
+                .put(prevBlockHashBytes)
+                .put(merkleRoot)
+                .putLong(this.getHeader().getTimeStamp())
+                .putLong(Constant.DIFFICULTY_TARGET_BITS)
+                .array();
+    }
 
+    // the target as 32 byte big endian number, so hashes can be compared without converting them
+    private byte[] targetBytes() {
+        byte[] targetBytes = this.target.toByteArray();
+        byte[] padded = new byte[32];
+        int length = Math.min(targetBytes.length, padded.length);
+        System.arraycopy(targetBytes, targetBytes.length - length, padded, padded.length - length, length);
+        return padded;
     }
 
     // Verify that the block is valid
     public boolean validate() {
-        byte[] data = this.prepareData(this.getBlock().getNonce());
-        return new BigInteger(DigestUtils.sha256Hex(data), 16).compareTo(this.target) == -1;
+        byte[] hash = HashUtils.sha256()
+                .update(this.prepareHeaderPrefix())
+                .putLong(this.getHeader().getNonce())
+                .digest();
+        return lessThan(hash, this.targetBytes());
     }
 
     // Run the proof of work, start mining, and find a Hash that is less than the difficulty target value
     public PowResult run() {
-        long nonce = 0;
-        String shaHex = "";
-        long startTime = System.currentTimeMillis();
-        while (nonce < Long.MAX_VALUE) {
-            log.info("POW running, nonce=" + nonce);
-            byte[] data = this.prepareData(nonce);
-            shaHex = DigestUtils.sha256Hex(data);
-            if (new BigInteger(shaHex, 16).compareTo(this.target) == -1) {
-                log.info("Elapsed Time: {} seconds \n", new Object[]{(float) (System.currentTimeMillis() - startTime) / 1000});
-                log.info("correct hash Hex: {} \n", new Object[]{shaHex});
-                break;
-            } else {
-                nonce++;
+        return this.run(() -> false);
+    }
+
+    // Same as run(), but gives up and returns null as soon as cancelled returns true
+    public PowResult run(BooleanSupplier cancelled) {
+        return MiningEngine.mine(this.prepareHeaderPrefix(), this.targetBytes(), cancelled);
+    }
+
+    // compare two 32 byte big endian unsigned numbers
+    static boolean lessThan(byte[] hash, byte[] target) {
+        for (int i = 0; i < hash.length; i++) {
+            int a = hash[i] & 0xff;
+            int b = target[i] & 0xff;
+            if (a != b) {
+                return a < b;
             }
         }
-        return new PowResult(nonce, shaHex);
+        return false;
     }
 }
-
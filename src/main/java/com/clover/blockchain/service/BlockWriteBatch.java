@@ -0,0 +1,193 @@
+package com.clover.blockchain.service;
+
+import com.clover.blockchain.block.Block;
+import com.clover.blockchain.block.BlockHeader;
+import com.clover.blockchain.config.RocksDBConfig;
+import com.clover.blockchain.kryo.KryoSerializer;
+import com.clover.blockchain.transaction.TXOutput;
+import com.clover.blockchain.transaction.Transaction;
+import com.clover.blockchain.transaction.TxLocation;
+import com.clover.blockchain.util.ByteUtils;
+import com.clover.blockchain.util.Hash256;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.WriteBatchWithIndex;
+import org.rocksdb.WriteOptions;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Collects every write needed to connect a block (block body and header, new tip, height, transaction and address index, chainstate delta)
+ * and commits them to RocksDB as a single atomic, synced write.
+ * Reads go through the batch first, so later transactions of a block see the changes of earlier ones.
+ */
+@Slf4j
+public class BlockWriteBatch implements AutoCloseable {
+
+    private final RocksDB rocksDB;
+
+    private final RocksDBConfig rocksDBConfig;
+
+    private static final int KEY_BUFFER_SIZE = 256;
+
+    private static final int VALUE_BUFFER_SIZE = 64 * 1024;
+
+    // a value buffer that grew beyond this size is not kept for the next value
+    private static final int MAX_VALUE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    // direct scratch buffers, the batch copies their content so they can be reused right after a put
+    private static final ThreadLocal<ByteBuffer> KEY_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(KEY_BUFFER_SIZE));
+
+    private static final ThreadLocal<ByteBuffer> VALUE_BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(VALUE_BUFFER_SIZE));
+
+    private final WriteBatchWithIndex batch = new WriteBatchWithIndex(true);
+
+    private final ReadOptions readOptions = new ReadOptions();
+
+    BlockWriteBatch(RocksDB rocksDB, RocksDBConfig rocksDBConfig) {
+        this.rocksDB = rocksDB;
+        this.rocksDBConfig = rocksDBConfig;
+    }
+
+    public void putLastBlockHash(Hash256 tipBlockHash) {
+        try {
+            batch.put(rocksDBConfig.getMetaHandle(), RocksDBService.toKey(rocksDBConfig.getLastBlockKey()), RocksDBService.toKey(tipBlockHash));
+        } catch (RocksDBException e) {
+            log.error("Fail to put last block hash into batch ! tipBlockHash=" + tipBlockHash, e);
+            throw new RuntimeException("Fail to put last block hash into batch ! tipBlockHash=" + tipBlockHash, e);
+        }
+    }
+
+    // mark the block the chainstate is up to date with once the batch is committed
+    public void putUTXOBestBlockHash(Hash256 bestBlockHash) {
+        try {
+            batch.put(rocksDBConfig.getMetaHandle(), RocksDBService.toKey(rocksDBConfig.getUtxoBestBlockKey()), RocksDBService.toKey(bestBlockHash));
+        } catch (RocksDBException e) {
+            log.error("Fail to put UTXO best block hash into batch ! bestBlockHash=" + bestBlockHash, e);
+            throw new RuntimeException("Fail to put UTXO best block hash into batch ! bestBlockHash=" + bestBlockHash, e);
+        }
+    }
+
+    public void putBlock(Block block) {
+        try {
+            this.putValue(rocksDBConfig.getBlocksHandle(), RocksDBService.toKey(block.getHash()), block);
+        } catch (RocksDBException e) {
+            log.error("Fail to put block into batch ! block=" + block.toString(), e);
+            throw new RuntimeException("Fail to put block into batch ! ", e);
+        }
+    }
+
+    // store the header apart from the block body, so headers are read without decoding any transaction
+    public void putBlockHeader(BlockHeader header) {
+        try {
+            this.putValue(rocksDBConfig.getHeaderHandle(), RocksDBService.toKey(header.getHash()), header);
+        } catch (RocksDBException e) {
+            log.error("Fail to put block header into batch ! header=" + header.toString(), e);
+            throw new RuntimeException("Fail to put block header into batch ! ", e);
+        }
+    }
+
+    // map the height of the block to its hash
+    public void putBlockHeight(Block block) {
+        try {
+            batch.put(rocksDBConfig.getHeightHandle(), ByteUtils.toBytes(block.getHeight()), RocksDBService.toKey(block.getHash()));
+        } catch (RocksDBException e) {
+            log.error("Fail to put block height into batch ! block=" + block.toString(), e);
+            throw new RuntimeException("Fail to put block height into batch ! ", e);
+        }
+    }
+
+    // index every transaction of the block by its id
+    public void putTxLocations(Block block) {
+        Transaction[] transactions = block.getTransactions();
+        for (int i = 0; i < transactions.length; i++) {
+            byte[] txId = transactions[i].getTxId();
+            try {
+                this.putValue(rocksDBConfig.getTxIndexHandle(), txId, new TxLocation(block.getHash(), i));
+            } catch (RocksDBException e) {
+                log.error("Fail to put tx location into batch ! txId=" + Hex.encodeHexString(txId), e);
+                throw new RuntimeException("Fail to put tx location into batch ! txId=" + Hex.encodeHexString(txId), e);
+            }
+        }
+    }
+
+    // unspent output at the outpoint, including the changes collected so far
+    public TXOutput getUTXO(byte[] txId, int outIndex) {
+        try {
+            byte[] utxoBytes = batch.getFromBatchAndDB(rocksDB, rocksDBConfig.getChainStateHandle(), readOptions,
+                    RocksDBService.outPointKey(txId, outIndex));
+            if (utxoBytes != null) {
+                return (TXOutput) KryoSerializer.deserialize(utxoBytes);
+            }
+            return null;
+        } catch (RocksDBException e) {
+            log.error("Fail to get UTXO from batch ! txId=" + Hex.encodeHexString(txId) + ", outIndex=" + outIndex, e);
+            throw new RuntimeException("Fail to get UTXO from batch ! txId=" + Hex.encodeHexString(txId), e);
+        }
+    }
+
+    // add the unspent output to the chainstate and to the address index
+    public void putUTXO(byte[] txId, int outIndex, TXOutput utxo) {
+        try {
+            this.putValue(rocksDBConfig.getChainStateHandle(), RocksDBService.outPointKey(txId, outIndex), utxo);
+            batch.put(rocksDBConfig.getAddrIndexHandle(),
+                    RocksDBService.addressIndexKey(utxo.getPubKeyHash(), txId, outIndex),
+                    ByteBuffer.allocate(Integer.BYTES).putInt(utxo.getValue()).array());
+        } catch (RocksDBException e) {
+            log.error("Fail to put UTXO into batch ! txId=" + Hex.encodeHexString(txId) + ", outIndex=" + outIndex, e);
+            throw new RuntimeException("Fail to put UTXO into batch ! txId=" + Hex.encodeHexString(txId), e);
+        }
+    }
+
+    // remove the spent output from the chainstate and from the address index
+    public void deleteUTXO(byte[] txId, int outIndex, TXOutput utxo) {
+        try {
+            batch.delete(rocksDBConfig.getChainStateHandle(), RocksDBService.outPointKey(txId, outIndex));
+            batch.delete(rocksDBConfig.getAddrIndexHandle(), RocksDBService.addressIndexKey(utxo.getPubKeyHash(), txId, outIndex));
+        } catch (RocksDBException e) {
+            log.error("Fail to delete UTXO in batch ! txId=" + Hex.encodeHexString(txId) + ", outIndex=" + outIndex, e);
+            throw new RuntimeException("Fail to delete UTXO in batch ! txId=" + Hex.encodeHexString(txId), e);
+        }
+    }
+
+    // write all collected changes at once, with a single fsync
+    public void commit() {
+        try (WriteOptions writeOptions = new WriteOptions().setSync(true)) {
+            rocksDB.write(writeOptions, batch);
+        } catch (RocksDBException e) {
+            log.error("Fail to commit block write batch ! ", e);
+            throw new RuntimeException("Fail to commit block write batch ! ", e);
+        }
+    }
+
+    // serialize the value straight into the scratch buffer, which grows once for larger blocks
+    private void putValue(ColumnFamilyHandle handle, byte[] key, Object value) throws RocksDBException {
+        ByteBuffer valueBuffer = VALUE_BUFFER.get();
+        valueBuffer.clear();
+        ByteBuffer written = KryoSerializer.serialize(value, valueBuffer, -1);
+        if (written != valueBuffer && written.capacity() <= MAX_VALUE_BUFFER_SIZE) {
+            VALUE_BUFFER.set(written);
+        }
+        written.flip();
+        if (key.length > KEY_BUFFER_SIZE) {
+            byte[] valueBytes = new byte[written.remaining()];
+            written.get(valueBytes);
+            batch.put(handle, key, valueBytes);
+            return;
+        }
+        ByteBuffer keyBuffer = KEY_BUFFER.get();
+        keyBuffer.clear();
+        keyBuffer.put(key).flip();
+        batch.put(handle, keyBuffer, written);
+    }
+
+    @Override
+    public void close() {
+        readOptions.close();
+        batch.close();
+    }
+}
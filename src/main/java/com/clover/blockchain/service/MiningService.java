@@ -0,0 +1,224 @@
+package com.clover.blockchain.service;
+
+import com.clover.blockchain.block.Block;
+import com.clover.blockchain.block.Blockchain;
+import com.clover.blockchain.pow.MiningJob;
+import com.clover.blockchain.transaction.Mempool;
+import com.clover.blockchain.transaction.Transaction;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs mining jobs in the background on a dedicated executor, so REST threads never wait for a proof of work.
+ * Jobs run one after another because every block extends the current tip.
+ * Each job mines a block template holding up to max-block-transactions pending transactions of the mempool,
+ * and transactions submitted while a job waits to run share that job.
+ * A job whose tip is replaced while mining starts over with a new block template on top of the new tip.
+ * Jobs write blocks and coins through the static chain services, so the service depends on their beans
+ * and is shut down, waiting for the running job, before the chainstate is flushed and the database closed.
+ */
+@Slf4j
+@Service
+@DependsOn({"blockchain", "UTXOSet", "miningEngine", "signatureVerifier"})
+public class MiningService {
+
+    // a cancelled job stops mining within milliseconds, only a block being connected has to finish
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mining-job");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // recent jobs, finished ones are kept around for polling until they are evicted
+    private final Cache<String, MiningJob> jobs;
+
+    private final Mempool mempool;
+
+    private final int maxBlockTransactions;
+
+    // job queued behind the running one, it picks up every transaction submitted until it starts
+    private MiningJob pendingJob;
+
+    @Autowired
+    public MiningService(Mempool mempool,
+                         @Value("${mining.job-history}") int jobHistory,
+                         @Value("${mining.max-block-transactions}") int maxBlockTransactions) {
+        this.mempool = mempool;
+        this.jobs = CacheBuilder.newBuilder().maximumSize(jobHistory).build();
+        this.maxBlockTransactions = maxBlockTransactions;
+    }
+
+    // make sure a job will mine the pending transactions, the coinbase of a new job pays rewardAddress
+    public synchronized MiningJob submit(String rewardAddress) {
+        if (pendingJob != null) {
+            synchronized (pendingJob) {
+                if (pendingJob.getStatus() == MiningJob.Status.PENDING) {
+                    return pendingJob;
+                }
+            }
+        }
+        MiningJob job = new MiningJob();
+        job.setId(UUID.randomUUID().toString());
+        job.setStatus(MiningJob.Status.PENDING);
+        job.setRewardAddress(rewardAddress);
+        job.setCreateTime(System.currentTimeMillis());
+        jobs.put(job.getId(), job);
+        pendingJob = job;
+        executor.submit(() -> this.run(job));
+        return job;
+    }
+
+    // block template: the oldest pending transactions followed by the coinbase, null if nothing is pending
+    private Transaction[] buildBlockTemplate(String rewardAddress) {
+        List<Transaction> pending = mempool.selectTransactions(maxBlockTransactions);
+        if (pending.isEmpty()) {
+            return null;
+        }
+        Transaction[] transactions = pending.toArray(new Transaction[pending.size() + 1]);
+        transactions[pending.size()] = Transaction.newCoinbaseTX(rewardAddress, "");
+        return transactions;
+    }
+
+    // null if the job is unknown
+    public MiningJob getJob(String jobId) {
+        return jobs.getIfPresent(jobId);
+    }
+
+    // a pending job is cancelled right away, a running one as soon as the workers notice
+    // the transactions of a cancelled job stay in the mempool for the next job
+    public MiningJob cancel(String jobId) {
+        MiningJob job = jobs.getIfPresent(jobId);
+        if (job == null) {
+            return null;
+        }
+        job.setCancelRequested(true);
+        synchronized (job) {
+            if (job.getStatus() == MiningJob.Status.PENDING) {
+                this.finish(job, MiningJob.Status.CANCELLED);
+            }
+        }
+        return job;
+    }
+
+    // stream status changes of the job as server-sent events, the stream ends with the job
+    public SseEmitter subscribe(String jobId) {
+        MiningJob job = jobs.getIfPresent(jobId);
+        if (job == null) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(0L);
+        emitter.onCompletion(() -> job.getEmitters().remove(emitter));
+        emitter.onTimeout(() -> job.getEmitters().remove(emitter));
+        synchronized (job) {
+            this.send(emitter, job);
+            if (job.isDone()) {
+                emitter.complete();
+            } else {
+                job.getEmitters().add(emitter);
+            }
+        }
+        return emitter;
+    }
+
+    private void run(MiningJob job) {
+        synchronized (job) {
+            if (job.isDone()) {
+                return;
+            }
+            job.setStatus(MiningJob.Status.RUNNING);
+            this.publish(job);
+        }
+        try {
+            Blockchain blockchain = Blockchain.initBlockchainFromDB();
+            Block block = null;
+            while (block == null && !job.isCancelRequested()) {
+                Transaction[] template = this.buildBlockTemplate(job.getRewardAddress());
+                if (template == null) {
+                    // an earlier job already mined every pending transaction
+                    job.setTxIds(List.of());
+                    break;
+                }
+                job.setTxIds(Arrays.stream(template).map(tx -> Hex.encodeHexString(tx.getTxId())).toList());
+                // mineBlock gives up when the tip moves, the next round builds a template on the new tip
+                block = blockchain.mineBlock(template, job::isCancelRequested);
+                if (block == null && !job.isCancelRequested()) {
+                    log.info("Tip changed while mining, restarting job on the new tip ! jobId=" + job.getId());
+                }
+            }
+            synchronized (job) {
+                if (block == null) {
+                    this.finish(job, job.isCancelRequested() ? MiningJob.Status.CANCELLED : MiningJob.Status.COMPLETED);
+                    return;
+                }
+                job.setBlockHash(block.getHash().toString());
+                job.setHeight(block.getHeight());
+                this.finish(job, MiningJob.Status.COMPLETED);
+            }
+        } catch (Exception e) {
+            log.error("Fail to mine block ! jobId=" + job.getId(), e);
+            synchronized (job) {
+                job.setError(e.getMessage());
+                this.finish(job, MiningJob.Status.FAILED);
+            }
+        }
+    }
+
+    private void finish(MiningJob job, MiningJob.Status status) {
+        job.setStatus(status);
+        job.setFinishTime(System.currentTimeMillis());
+        this.publish(job);
+        for (SseEmitter emitter : job.getEmitters()) {
+            emitter.complete();
+        }
+        job.getEmitters().clear();
+    }
+
+    private void publish(MiningJob job) {
+        for (SseEmitter emitter : job.getEmitters()) {
+            this.send(emitter, job);
+        }
+    }
+
+    private void send(SseEmitter emitter, MiningJob job) {
+        try {
+            emitter.send(SseEmitter.event().name(job.getStatus().name()).data(job));
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Fail to notify subscriber of mining job ! jobId=" + job.getId(), e);
+            job.getEmitters().remove(emitter);
+        }
+    }
+
+    // the running job is not interrupted, it may be inside a synced write of its block
+    @PreDestroy
+    public void shutdown() {
+        for (MiningJob job : jobs.asMap().values()) {
+            job.setCancelRequested(true);
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.error("Mining job still running after shutdown ! ");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,112 +1,494 @@
 package com.clover.blockchain.service;
 
 import com.clover.blockchain.block.Block;
+import com.clover.blockchain.block.BlockHeader;
 import com.clover.blockchain.config.RocksDBConfig;
 import com.clover.blockchain.kryo.KryoSerializer;
+import com.clover.blockchain.transaction.OutPoint;
 import com.clover.blockchain.transaction.TXOutput;
+import com.clover.blockchain.transaction.TxLocation;
+import com.clover.blockchain.util.ByteUtils;
+import com.clover.blockchain.util.Hash256;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.IngestExternalFileOptions;
+import org.rocksdb.Options;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.Slice;
+import org.rocksdb.Snapshot;
+import org.rocksdb.SstFileWriter;
+import org.rocksdb.WriteOptions;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Service;
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
 @Service
 @Slf4j
+@DependsOn("kryoSerializer")
 public class RocksDBService {
 
     private final RocksDB rocksDB;
 
     private final RocksDBConfig rocksDBConfig;
 
+    private static final int OUTPOINT_KEY_LENGTH = Hash256.LENGTH + Integer.BYTES;
+
+    // below this many address index entries a scan is not worth splitting over threads
+    private static final long PARALLEL_SCAN_MIN_KEYS = 100_000;
+
+    // a seek to the entries of one address costs roughly as much as scanning this many entries
+    private static final long SEEK_COST_KEYS = 64;
+
+    // decoded blocks, weighed by their serialized size; cached blocks are shared and must not be modified
+    private final Cache<Hash256, CachedBlock> blockCache;
+
     @Autowired
     public RocksDBService(RocksDB rocksDB, RocksDBConfig rocksDBConfig) {
         this.rocksDB = rocksDB;
         this.rocksDBConfig = rocksDBConfig;
+        this.blockCache = CacheBuilder.newBuilder()
+                .maximumWeight(rocksDBConfig.getBlockCacheMaxBytes())
+                .weigher((Hash256 blockHash, CachedBlock cachedBlock) -> cachedBlock.getSize())
+                .recordStats()
+                .build();
     }
 
     // save the hash value of the latest block
-    public void putLastBlockHash(String tipBlockHash) {
+    public void putLastBlockHash(Hash256 tipBlockHash) {
         try {
-            rocksDBConfig.getBlocksBucket().put(rocksDBConfig.getLastBlockKey(), KryoSerializer.serialize(tipBlockHash));
-            rocksDB.put(KryoSerializer.serialize(rocksDBConfig.getBlockBucketKey()), KryoSerializer.serialize(rocksDBConfig.getBlocksBucket()));
+            rocksDB.put(rocksDBConfig.getMetaHandle(), toKey(rocksDBConfig.getLastBlockKey()), toKey(tipBlockHash));
         } catch (RocksDBException e) {
             log.error("Fail to put last block hash ! tipBlockHash=" + tipBlockHash, e);
             throw new RuntimeException("Fail to put last block hash ! tipBlockHash=" + tipBlockHash, e);
         }
     }
 
-    // query the hash value of latest block
-    public String getLastBlockHash() {
-        byte[] lastBlockHashBytes = rocksDBConfig.getBlocksBucket().get(rocksDBConfig.getLastBlockKey());
-        if (lastBlockHashBytes != null) {
-            return (String) KryoSerializer.deserialize(lastBlockHashBytes);
+    // query the hash value of latest block, null if there is no chain yet
+    public Hash256 getLastBlockHash() {
+        try {
+            byte[] lastBlockHashBytes = rocksDB.get(rocksDBConfig.getMetaHandle(), toKey(rocksDBConfig.getLastBlockKey()));
+            if (lastBlockHashBytes != null) {
+                return Hash256.of(lastBlockHashBytes);
+            }
+            return null;
+        } catch (RocksDBException e) {
+            log.error("Fail to get last block hash ! ", e);
+            throw new RuntimeException("Fail to get last block hash ! ", e);
+        }
+    }
+
+    // hash of the block the chainstate on disk is up to date with, null if it was never flushed
+    public Hash256 getUTXOBestBlockHash() {
+        try {
+            byte[] bestBlockHashBytes = rocksDB.get(rocksDBConfig.getMetaHandle(), toKey(rocksDBConfig.getUtxoBestBlockKey()));
+            if (bestBlockHashBytes != null) {
+                return Hash256.of(bestBlockHashBytes);
+            }
+            return null;
+        } catch (RocksDBException e) {
+            log.error("Fail to get UTXO best block hash ! ", e);
+            throw new RuntimeException("Fail to get UTXO best block hash ! ", e);
         }
-        return "";
     }
 
     // save block
     public void putBlock(Block block) {
         try {
-            rocksDBConfig.getBlocksBucket().put(block.getHash(), KryoSerializer.serialize(block));
-            rocksDB.put(KryoSerializer.serialize(rocksDBConfig.getBlockBucketKey()), KryoSerializer.serialize(rocksDBConfig.getBlocksBucket()));
+            rocksDB.put(rocksDBConfig.getBlocksHandle(), toKey(block.getHash()), KryoSerializer.serialize(block));
         } catch (RocksDBException e) {
             log.error("Fail to put block ! block=" + block.toString(), e);
             throw new RuntimeException("Fail to put block ! ", e);
         }
     }
 
-    // query block
-    public Block getBlock(String blockHash) {
-        byte[] blockBytes = rocksDBConfig.getBlocksBucket().get(blockHash);
+    // query block, served from the block cache when possible
+    public Block getBlock(Hash256 blockHash) {
+        CachedBlock cachedBlock = blockCache.getIfPresent(blockHash);
+        if (cachedBlock != null) {
+            return cachedBlock.getBlock();
+        }
+        byte[] blockBytes;
+        try {
+            blockBytes = rocksDB.get(rocksDBConfig.getBlocksHandle(), toKey(blockHash));
+        } catch (RocksDBException e) {
+            log.error("Fail to get block ! blockHash=" + blockHash, e);
+            throw new RuntimeException("Fail to get block ! blockHash=" + blockHash, e);
+        }
         if (blockBytes != null) {
-            return (Block) KryoSerializer.deserialize(blockBytes);
+            Block block = (Block) KryoSerializer.deserialize(blockBytes);
+            blockCache.put(blockHash, new CachedBlock(block, blockBytes.length));
+            return block;
         }
         throw new RuntimeException("Fail to get block ! blockHash=" + blockHash);
     }
 
-    // empty the chainstate bucket
-    public void cleanChainStateBucket() {
+    // read the block straight from disk without adding it to the block cache, for one-off scans of the whole chain
+    public Block readBlock(Hash256 blockHash) {
         try {
-            rocksDBConfig.getChainstateBucket().clear();
-        } catch (Exception e) {
-            log.error("Fail to clear chainstate bucket ! ", e);
-            throw new RuntimeException("Fail to clear chainstate bucket ! ", e);
+            byte[] blockBytes = rocksDB.get(rocksDBConfig.getBlocksHandle(), toKey(blockHash));
+            if (blockBytes != null) {
+                return (Block) KryoSerializer.deserialize(blockBytes);
+            }
+        } catch (RocksDBException e) {
+            log.error("Fail to read block ! blockHash=" + blockHash, e);
+            throw new RuntimeException("Fail to read block ! blockHash=" + blockHash, e);
         }
+        throw new RuntimeException("Fail to read block ! blockHash=" + blockHash);
     }
 
-    public void putUTXOs(String key, TXOutput[] utxos) {
+    // query the header of the block without its transactions, null if it is not stored
+    public BlockHeader getBlockHeader(Hash256 blockHash) {
         try {
-            rocksDBConfig.getChainstateBucket().put(key, KryoSerializer.serialize(utxos));
-            rocksDB.put(KryoSerializer.serialize(rocksDBConfig.getChainstateBucketKey()), KryoSerializer.serialize(rocksDBConfig.getChainstateBucket()));
-        } catch (Exception e) {
-            log.error("Fail to put UTXOs into chainstate bucket ! key=" + key, e);
-            throw new RuntimeException("Fail to put UTXOs into chainstate bucket ! key=" + key, e);
+            byte[] headerBytes = rocksDB.get(rocksDBConfig.getHeaderHandle(), toKey(blockHash));
+            if (headerBytes != null) {
+                return (BlockHeader) KryoSerializer.deserialize(headerBytes);
+            }
+            return null;
+        } catch (RocksDBException e) {
+            log.error("Fail to get block header ! blockHash=" + blockHash, e);
+            throw new RuntimeException("Fail to get block header ! blockHash=" + blockHash, e);
         }
     }
 
-    // save UTXO data
-    public TXOutput[] getUTXOs(String key) {
-        byte[] utxosByte = rocksDBConfig.getChainstateBucket().get(key);
-        if (utxosByte != null) {
-            return (TXOutput[]) KryoSerializer.deserialize(utxosByte);
+    // hit and miss counters of the block cache
+    public CacheStats getBlockCacheStats() {
+        return blockCache.stats();
+    }
+
+    // query the hash of the block at the given height, null if there is none
+    public Hash256 getBlockHash(long height) {
+        try {
+            byte[] blockHashBytes = rocksDB.get(rocksDBConfig.getHeightHandle(), ByteUtils.toBytes(height));
+            if (blockHashBytes != null) {
+                return Hash256.of(blockHashBytes);
+            }
+            return null;
+        } catch (RocksDBException e) {
+            log.error("Fail to get block hash ! height=" + height, e);
+            throw new RuntimeException("Fail to get block hash ! height=" + height, e);
         }
-        return null;
     }
 
-    // remove UTXO datra
-    public void deleteUTXOs(String key) {
+    // query where a transaction is stored, null if it is not indexed
+    public TxLocation getTxLocation(Hash256 txId) {
         try {
-            rocksDBConfig.getChainstateBucket().remove(key);
-            rocksDB.put(KryoSerializer.serialize(rocksDBConfig.getChainstateBucketKey()), KryoSerializer.serialize(rocksDBConfig.getChainstateBucket()));
+            byte[] locationBytes = rocksDB.get(rocksDBConfig.getTxIndexHandle(), toKey(txId));
+            if (locationBytes != null) {
+                return (TxLocation) KryoSerializer.deserialize(locationBytes);
+            }
+            return null;
+        } catch (RocksDBException e) {
+            log.error("Fail to get tx location ! txId=" + txId, e);
+            throw new RuntimeException("Fail to get tx location ! txId=" + txId, e);
+        }
+    }
+
+    // empty the chainstate bucket together with the address index
+    public void cleanChainStateBucket() {
+        this.cleanBucket(rocksDBConfig.getChainStateHandle());
+        this.cleanBucket(rocksDBConfig.getAddrIndexHandle());
+    }
+
+    private void cleanBucket(ColumnFamilyHandle handle) {
+        try (RocksIterator iterator = rocksDB.newIterator(handle)) {
+            iterator.seekToFirst();
+            if (!iterator.isValid()) {
+                return;
+            }
+            byte[] firstKey = iterator.key();
+            iterator.seekToLast();
+            byte[] lastKey = iterator.key();
+            // the end key of a range deletion is exclusive, so the last key is removed separately
+            rocksDB.deleteRange(handle, firstKey, lastKey);
+            rocksDB.delete(handle, lastKey);
         } catch (Exception e) {
-            log.error("Fail to delete UTXOs by key ! key=" + key, e);
-            throw new RuntimeException("Fail to delete UTXOs by key ! key=" + key, e);
+            log.error("Fail to clear bucket ! ", e);
+            throw new RuntimeException("Fail to clear bucket ! ", e);
         }
     }
 
+    /**
+     * Replace the chainstate and the address index with the given unspent outputs.
+     * Both are written as sorted SST files and ingested into the emptied column families, which skips the memtable
+     * and the write-ahead log entirely.
+     * The best block marker is removed first and written again only once both are loaded, so a crash in between
+     * leaves no marker and the startup replay rebuilds the chainstate from the genesis block.
+     * Keys and values are built and sorted in parallel on the given pool.
+     */
+    public void loadUTXOs(Map<OutPoint, TXOutput> utxos, Hash256 bestBlockHash, ForkJoinPool pool) {
+        try (WriteOptions writeOptions = new WriteOptions().setSync(true)) {
+            rocksDB.delete(rocksDBConfig.getMetaHandle(), writeOptions, toKey(rocksDBConfig.getUtxoBestBlockKey()));
+        } catch (RocksDBException e) {
+            log.error("Fail to delete UTXO best block hash ! ", e);
+            throw new RuntimeException("Fail to delete UTXO best block hash ! ", e);
+        }
+        this.cleanChainStateBucket();
+        if (!utxos.isEmpty()) {
+            try {
+                pool.submit(() -> this.ingestUTXOs(utxos)).get();
+            } catch (InterruptedException | ExecutionException e) {
+                log.error("Fail to load UTXOs ! utxos=" + utxos.size(), e);
+                throw new RuntimeException("Fail to load UTXOs ! utxos=" + utxos.size(), e);
+            }
+        }
+        try (WriteOptions writeOptions = new WriteOptions().setSync(true)) {
+            rocksDB.put(rocksDBConfig.getMetaHandle(), writeOptions, toKey(rocksDBConfig.getUtxoBestBlockKey()),
+                    toKey(bestBlockHash));
+        } catch (RocksDBException e) {
+            log.error("Fail to put UTXO best block hash ! bestBlockHash=" + bestBlockHash, e);
+            throw new RuntimeException("Fail to put UTXO best block hash ! bestBlockHash=" + bestBlockHash, e);
+        }
+    }
 
+    // serialize the unspent outputs into keys and values and ingest them, parallel stages run on the calling pool
+    private void ingestUTXOs(Map<OutPoint, TXOutput> utxos) {
+        List<Map.Entry<OutPoint, TXOutput>> entries = new ArrayList<>(utxos.entrySet());
+        byte[][] chainStateKeys = new byte[entries.size()][];
+        byte[][] chainStateValues = new byte[entries.size()][];
+        byte[][] addressKeys = new byte[entries.size()][];
+        byte[][] addressValues = new byte[entries.size()][];
+        IntStream.range(0, entries.size()).parallel().forEach(i -> {
+            OutPoint outPoint = entries.get(i).getKey();
+            TXOutput utxo = entries.get(i).getValue();
+            byte[] txId = outPoint.getTxId().getBytes();
+            chainStateKeys[i] = outPointKey(txId, outPoint.getOutIndex());
+            chainStateValues[i] = KryoSerializer.serialize(utxo);
+            addressKeys[i] = addressIndexKey(utxo.getPubKeyHash(), txId, outPoint.getOutIndex());
+            addressValues[i] = ByteBuffer.allocate(Integer.BYTES).putInt(utxo.getValue()).array();
+        });
+        this.ingest(rocksDBConfig.getChainStateHandle(), "chainstate", chainStateKeys, chainStateValues);
+        this.ingest(rocksDBConfig.getAddrIndexHandle(), "addrindex", addressKeys, addressValues);
+    }
 
+    // write the entries sorted by key into an SST file and move it into the column family
+    private void ingest(ColumnFamilyHandle handle, String name, byte[][] keys, byte[][] values) {
+        Integer[] order = IntStream.range(0, keys.length).boxed().toArray(Integer[]::new);
+        // SST files have to be written in the bytewise order of the default comparator
+        Arrays.parallelSort(order, (a, b) -> Arrays.compareUnsigned(keys[a], keys[b]));
+        File sstFile = new File(rocksDBConfig.getRocksDBDirectory(), "ingest-" + name + ".sst");
+        try (EnvOptions envOptions = new EnvOptions();
+             Options options = new Options();
+             SstFileWriter writer = new SstFileWriter(envOptions, options);
+             IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions().setMoveFiles(true)) {
+            writer.open(sstFile.getAbsolutePath());
+            for (int i : order) {
+                writer.put(keys[i], values[i]);
+            }
+            writer.finish();
+            rocksDB.ingestExternalFile(handle, List.of(sstFile.getAbsolutePath()), ingestOptions);
+        } catch (RocksDBException e) {
+            log.error("Fail to ingest " + name + " ! ", e);
+            throw new RuntimeException("Fail to ingest " + name + " ! ", e);
+        } finally {
+            sstFile.delete();
+        }
+    }
 
+    // query the unspent output at the outpoint, null if it is spent or unknown
+    public TXOutput getUTXO(byte[] txId, int outIndex) {
+        try {
+            byte[] utxoBytes = rocksDB.get(rocksDBConfig.getChainStateHandle(), outPointKey(txId, outIndex));
+            if (utxoBytes != null) {
+                return (TXOutput) KryoSerializer.deserialize(utxoBytes);
+            }
+            return null;
+        } catch (RocksDBException e) {
+            log.error("Fail to get UTXO ! txId=" + Hex.encodeHexString(txId) + ", outIndex=" + outIndex, e);
+            throw new RuntimeException("Fail to get UTXO ! txId=" + Hex.encodeHexString(txId) + ", outIndex=" + outIndex, e);
+        }
+    }
+
+    // start collecting the writes of a block connect, see BlockWriteBatch#commit
+    public BlockWriteBatch newBlockWriteBatch() {
+        return new BlockWriteBatch(rocksDB, rocksDBConfig);
+    }
+
+    // walk through every unspent output without loading the chainstate into memory
+    public void iterateUTXOs(UTXOVisitor visitor) {
+        try (RocksIterator iterator = rocksDB.newIterator(rocksDBConfig.getChainStateHandle())) {
+            for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                ByteBuffer keyBuffer = ByteBuffer.wrap(key);
+                byte[] txId = new byte[key.length - Integer.BYTES];
+                keyBuffer.get(txId);
+                if (!visitor.visit(txId, keyBuffer.getInt(), (TXOutput) KryoSerializer.deserialize(iterator.value()))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // walk through the unspent outputs locked with the public key hash, only the address index is read
+    public void iterateUTXOs(byte[] pubKeyHash, UTXOVisitor visitor) {
+        try (RocksIterator iterator = rocksDB.newIterator(rocksDBConfig.getAddrIndexHandle())) {
+            for (iterator.seek(pubKeyHash); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (key.length != pubKeyHash.length + OUTPOINT_KEY_LENGTH
+                        || !Arrays.equals(key, 0, pubKeyHash.length, pubKeyHash, 0, pubKeyHash.length)) {
+                    break;
+                }
+                ByteBuffer keyBuffer = ByteBuffer.wrap(key, pubKeyHash.length, OUTPOINT_KEY_LENGTH);
+                byte[] txId = new byte[Hash256.LENGTH];
+                keyBuffer.get(txId);
+                int outIndex = keyBuffer.getInt();
+                int value = ByteBuffer.wrap(iterator.value()).getInt();
+                if (!visitor.visit(txId, outIndex, new TXOutput(value, pubKeyHash))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // consistent view of the database for long scans, it has to be handed back through releaseSnapshot
+    public Snapshot getSnapshot() {
+        return rocksDB.getSnapshot();
+    }
+
+    public void releaseSnapshot(Snapshot snapshot) {
+        rocksDB.releaseSnapshot(snapshot);
+    }
+
+    /**
+     * Walk through the address index entries of the given public key hashes as seen by the snapshot.
+     * A few addresses are looked up by seeking to their prefix, many addresses by a scan of the whole index;
+     * a large index is split into ranges of public key hashes that are scanned in parallel, so the visitor has to be
+     * thread-safe; entries arrive in key order within a range only, entries of other addresses may be visited too.
+     * The ranges are scanned on the given pool.
+     */
+    public void scanAddressIndex(Snapshot snapshot, Collection<ByteBuffer> pubKeyHashes, AddressIndexVisitor visitor,
+                                 ForkJoinPool pool) {
+        ColumnFamilyHandle handle = rocksDBConfig.getAddrIndexHandle();
+        long estimatedKeys;
+        try {
+            estimatedKeys = rocksDB.getLongProperty(handle, "rocksdb.estimate-num-keys");
+        } catch (RocksDBException e) {
+            log.error("Fail to estimate address index size ! ", e);
+            throw new RuntimeException("Fail to estimate address index size ! ", e);
+        }
+        if (pubKeyHashes.size() * SEEK_COST_KEYS < estimatedKeys) {
+            for (ByteBuffer pubKeyHash : pubKeyHashes) {
+                byte[] prefix = new byte[pubKeyHash.remaining()];
+                pubKeyHash.duplicate().get(prefix);
+                this.scanAddressIndex(snapshot, handle, prefix, prefixEnd(prefix), visitor);
+            }
+            return;
+        }
+        int partitions = estimatedKeys < PARALLEL_SCAN_MIN_KEYS ? 1 : pool.getParallelism();
+        // public key hashes are uniformly distributed, so ranges of their first byte split the index evenly
+        try {
+            pool.submit(() -> IntStream.range(0, partitions).parallel().forEach(i -> {
+                byte[] from = i == 0 ? null : new byte[]{(byte) (i * 256 / partitions)};
+                byte[] to = i == partitions - 1 ? null : new byte[]{(byte) ((i + 1) * 256 / partitions)};
+                this.scanAddressIndex(snapshot, handle, from, to, visitor);
+            })).get();
+        } catch (InterruptedException | ExecutionException e) {
+            log.error("Fail to scan address index ! partitions=" + partitions, e);
+            throw new RuntimeException("Fail to scan address index ! partitions=" + partitions, e);
+        }
+    }
 
+    // scan the address index from the from key up to the exclusive to key, null bounds are open
+    private void scanAddressIndex(Snapshot snapshot, ColumnFamilyHandle handle, byte[] from, byte[] to,
+                                  AddressIndexVisitor visitor) {
+        try (ReadOptions readOptions = new ReadOptions().setFillCache(false).setSnapshot(snapshot);
+             Slice upperBound = to == null ? null : new Slice(to)) {
+            if (upperBound != null) {
+                readOptions.setIterateUpperBound(upperBound);
+            }
+            try (RocksIterator iterator = rocksDB.newIterator(handle, readOptions)) {
+                if (from == null) {
+                    iterator.seekToFirst();
+                } else {
+                    iterator.seek(from);
+                }
+                for (; iterator.isValid(); iterator.next()) {
+                    byte[] key = iterator.key();
+                    ByteBuffer pubKeyHash = ByteBuffer.wrap(key, 0, key.length - OUTPOINT_KEY_LENGTH);
+                    visitor.visit(pubKeyHash, key, ByteBuffer.wrap(iterator.value()).getInt());
+                }
+            }
+        }
+    }
+
+    // first key after every key starting with the prefix, null if there is none
+    private static byte[] prefixEnd(byte[] prefix) {
+        byte[] end = prefix.clone();
+        for (int i = end.length - 1; i >= 0; i--) {
+            if (++end[i] != 0) {
+                return Arrays.copyOf(end, i + 1);
+            }
+        }
+        return null;
+    }
+
+    // outpoint of an address index key, it follows the public key hash
+    public static OutPoint addressIndexOutPoint(byte[] key) {
+        int offset = key.length - OUTPOINT_KEY_LENGTH;
+        return new OutPoint(Hash256.of(key, offset), ByteBuffer.wrap(key, offset + Hash256.LENGTH, Integer.BYTES).getInt());
+    }
+
+    // chainstate key: txid followed by the big endian output index
+    static byte[] outPointKey(byte[] txId, int outIndex) {
+        return ByteBuffer.allocate(txId.length + Integer.BYTES).put(txId).putInt(outIndex).array();
+    }
+
+    // address index key: public key hash followed by the outpoint, so all outputs of an address share a prefix
+    static byte[] addressIndexKey(byte[] pubKeyHash, byte[] txId, int outIndex) {
+        return ByteBuffer.allocate(pubKeyHash.length + txId.length + Integer.BYTES)
+                .put(pubKeyHash).put(txId).putInt(outIndex).array();
+    }
+
+    static byte[] toKey(String key) {
+        return key.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // block and transaction hashes are stored as their raw 32 bytes, as keys and as values
+    static byte[] toKey(Hash256 hash) {
+        return hash.getBytes();
+    }
+
+    /**
+     * Receives unspent outputs one by one, returning false stops the iteration
+     */
+    @FunctionalInterface
+    public interface UTXOVisitor {
+        boolean visit(byte[] txId, int outIndex, TXOutput txOutput);
+    }
+
+    /**
+     * Receives the entries of the address index: the public key hash as a view of the first bytes of the key,
+     * the whole key and the value of the output
+     */
+    @FunctionalInterface
+    public interface AddressIndexVisitor {
+        void visit(ByteBuffer pubKeyHash, byte[] key, int value);
+    }
+
+    @Value
+    private static class CachedBlock {
+        Block block;
+        int size;
+    }
 
 }
@@ -0,0 +1,168 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.block.Block;
+import com.clover.blockchain.util.Hash256;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Verified transactions waiting to be mined.
+ * Every pending transaction claims the outputs it spends, so a second transaction spending one of them is rejected
+ * and coin selection can skip them. Transactions leave the pool when a block confirms them or one of their outputs,
+ * or when they are evicted because the pool is full or they waited too long.
+ */
+@Slf4j
+@Component
+public class Mempool {
+
+    // pending transactions by txid
+    private final Map<Hash256, MempoolEntry> transactions = new ConcurrentHashMap<>();
+
+    // outpoint -> txid of the pending transaction spending it
+    private final Map<OutPoint, Hash256> spentOutpoints = new ConcurrentHashMap<>();
+
+    // writers are serialized, so a transaction and the outpoints it claims always change together
+    private final Object lock = new Object();
+
+    private final int maxSize;
+
+    private final long maxAgeMillis;
+
+    @Autowired
+    public Mempool(@Value("${mempool.max-size}") int maxSize, @Value("${mempool.max-age-seconds}") long maxAgeSeconds) {
+        this.maxSize = maxSize;
+        this.maxAgeMillis = maxAgeSeconds * 1000;
+    }
+
+    // add a verified transaction, fails if it spends an output already spent by another pending transaction
+    public void add(Transaction tx) {
+        if (tx.isCoinbase()) {
+            throw new RuntimeException("ERROR: coinbase transaction can not be added to the mempool ! ");
+        }
+        Hash256 txId = Hash256.of(tx.getTxId());
+        synchronized (lock) {
+            this.evictExpired();
+            if (transactions.containsKey(txId)) {
+                return;
+            }
+            for (TXInput txInput : tx.getInputs()) {
+                Hash256 spender = spentOutpoints.get(outpoint(txInput));
+                if (spender != null) {
+                    log.error("Fail to add transaction to mempool ! double spend ! txId=" + txId + ", conflictsWith=" + spender);
+                    throw new RuntimeException("ERROR: double spend ! output already spent by pending transaction " + spender);
+                }
+            }
+            while (transactions.size() >= maxSize) {
+                this.evictOldest();
+            }
+            transactions.put(txId, new MempoolEntry(tx, System.currentTimeMillis()));
+            for (TXInput txInput : tx.getInputs()) {
+                spentOutpoints.put(outpoint(txInput), txId);
+            }
+        }
+    }
+
+    // pending transaction by txid, null if there is none
+    public Transaction get(Hash256 txId) {
+        MempoolEntry entry = transactions.get(txId);
+        return entry == null ? null : entry.getTx();
+    }
+
+    public int size() {
+        return transactions.size();
+    }
+
+    // whether a pending transaction already spends the output
+    public boolean isSpent(Hash256 txId, int outIndex) {
+        return spentOutpoints.containsKey(new OutPoint(txId, outIndex));
+    }
+
+    // block template content: up to max pending transactions, the oldest first
+    public List<Transaction> selectTransactions(int max) {
+        synchronized (lock) {
+            this.evictExpired();
+        }
+        return transactions.values().stream()
+                .sorted(Comparator.comparingLong(MempoolEntry::getAddedTime))
+                .limit(max)
+                .map(MempoolEntry::getTx)
+                .toList();
+    }
+
+    // drop the transactions confirmed by the block, and those spending an output the block spends
+    public void removeForBlock(Block block) {
+        synchronized (lock) {
+            for (Transaction tx : block.getTransactions()) {
+                this.remove(Hash256.of(tx.getTxId()));
+                if (tx.isCoinbase()) {
+                    continue;
+                }
+                for (TXInput txInput : tx.getInputs()) {
+                    Hash256 conflict = spentOutpoints.get(outpoint(txInput));
+                    if (conflict != null) {
+                        log.info("Remove conflicting transaction from mempool ! txId=" + conflict);
+                        this.remove(conflict);
+                    }
+                }
+            }
+        }
+    }
+
+    // drop the transactions that waited longer than the maximum age
+    public int evictExpired() {
+        synchronized (lock) {
+            long expiry = System.currentTimeMillis() - maxAgeMillis;
+            int evicted = 0;
+            for (Map.Entry<Hash256, MempoolEntry> entry : transactions.entrySet()) {
+                if (entry.getValue().getAddedTime() < expiry) {
+                    this.remove(entry.getKey());
+                    evicted++;
+                }
+            }
+            if (evicted > 0) {
+                log.info("Evicted expired transactions from mempool ! count=" + evicted);
+            }
+            return evicted;
+        }
+    }
+
+    private void evictOldest() {
+        transactions.entrySet().stream()
+                .min(Comparator.comparingLong(entry -> entry.getValue().getAddedTime()))
+                .ifPresent(entry -> {
+                    log.info("Mempool full, evicting oldest transaction ! txId=" + entry.getKey());
+                    this.remove(entry.getKey());
+                });
+    }
+
+    private void remove(Hash256 txId) {
+        MempoolEntry entry = transactions.remove(txId);
+        if (entry == null) {
+            return;
+        }
+        for (TXInput txInput : entry.getTx().getInputs()) {
+            spentOutpoints.remove(outpoint(txInput), txId);
+        }
+    }
+
+    private static OutPoint outpoint(TXInput txInput) {
+        return new OutPoint(txInput.getTxId(), txInput.getTxOutputIndex());
+    }
+
+    @Getter
+    @AllArgsConstructor
+    private static class MempoolEntry {
+        private final Transaction tx;
+        private final long addedTime;
+    }
+
+}
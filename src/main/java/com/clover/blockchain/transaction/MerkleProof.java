@@ -0,0 +1,53 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.util.HashUtils;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Path from a transaction id to the merkle root of its block: the sibling hash of every level where hashing happens.
+ * Levels where the node is carried up unhashed have no step. Hashes are hex encoded.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class MerkleProof {
+    private String txId;
+    private int txIndex;
+    private int txCount;
+    private List<Step> steps;
+    private String merkleRoot;
+
+    // hash the transaction id up the path and compare the result with the expected merkle root
+    public boolean verify(byte[] expectedMerkleRoot) {
+        try {
+            byte[] hash = Hex.decodeHex(txId);
+            for (Step step : steps) {
+                byte[] sibling = Hex.decodeHex(step.getHash());
+                hash = HashUtils.sha256()
+                        .update(step.isLeft() ? sibling : hash)
+                        .update(step.isLeft() ? hash : sibling)
+                        .digest();
+            }
+            return Arrays.equals(hash, expectedMerkleRoot);
+        } catch (DecoderException e) {
+            return false;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class Step {
+        // sibling hash
+        private String hash;
+        // whether the sibling is the left operand of the hash
+        private boolean left;
+    }
+}
@@ -1,112 +1,144 @@
 package com.clover.blockchain.transaction;
 
-import com.clover.blockchain.util.ByteUtils;
-import com.google.common.collect.Lists;
-import lombok.Data;
-import org.apache.commons.codec.digest.DigestUtils;
+import com.clover.blockchain.util.HashUtils;
+import org.apache.commons.codec.binary.Hex;
 
+import java.util.ArrayList;
 import java.util.List;
-
-@Data
+import java.util.stream.IntStream;
+
+/**
+ * Merkle tree kept as flat arrays, one per level, every node hash stored at index * 32.
+ * The bottom level hashes pairs of leaves, an odd last leaf is paired with itself.
+ * Higher levels hash pairs of nodes, an odd last node is carried up as it is.
+ * All levels are kept, so inclusion proofs can be read from the tree.
+ */
 public class MerkleTree {
-    private Node root;
 
-    private byte[][] leafHashes;
+    public static final int HASH_LENGTH = HashUtils.SHA256_LENGTH;
 
-    public MerkleTree(byte[][] leafHashes) {
-        constructTree(leafHashes);
-    }
+    // levels with more pairs than this are hashed by several threads
+    private static final int PARALLEL_THRESHOLD = 4096;
 
-    // Build the entire Merkle Tree from the bottom leaf node upwards
-    private void constructTree(byte[][] leafHashes) {
+    private final byte[][] leafHashes;
+
+    // levels[0] holds the parents of the leaves, the last level holds the root
+    private final byte[][] levels;
+
+    public MerkleTree(byte[][] leafHashes) {
         if (leafHashes == null || leafHashes.length < 1) {
             throw new RuntimeException("ERROR:Fail to construct merkle tree ! leafHashes data invalid ! ");
         }
         this.leafHashes = leafHashes;
-        List<Node> parents = bottomLevel(leafHashes);
-        while (parents.size() > 1) {
-            parents = internalLevel(parents);
+
+        int depth = 1;
+        for (int count = (leafHashes.length + 1) / 2; count > 1; count = (count + 1) / 2) {
+            depth++;
+        }
+        this.levels = new byte[depth][];
+        this.levels[0] = bottomLevel(leafHashes);
+        for (int i = 1; i < depth; i++) {
+            this.levels[i] = internalLevel(this.levels[i - 1]);
         }
-        root = parents.get(0);
     }
 
-    // build a hirerchy node
-    private List<Node> internalLevel(List<Node> children) {
-        List<Node> parents = Lists.newArrayListWithCapacity(children.size() / 2);
-        for (int i = 0; i < children.size() - 1; i += 2) {
-            Node child1 = children.get(i);
-            Node child2 = children.get(i + 1);
+    public byte[] getRoot() {
+        byte[] root = new byte[HASH_LENGTH];
+        System.arraycopy(levels[levels.length - 1], 0, root, 0, HASH_LENGTH);
+        return root;
+    }
 
-            Node parent = constructInternalNode(child1, child2);
-            parents.add(parent);
-        }
+    public byte[][] getLeafHashes() {
+        return leafHashes;
+    }
 
-        // 内部节点奇数个，只对left节点进行计算
-        if (children.size() % 2 != 0) {
-            Node child = children.get(children.size() - 1);
-            Node parent = constructInternalNode(child, null);
-            parents.add(parent);
-        }
+    public int getLeafCount() {
+        return leafHashes.length;
+    }
 
-        return parents;
+    // number of levels above the leaves
+    public int getDepth() {
+        return levels.length;
     }
 
-    // bottom node construction
-    private List<Node> bottomLevel(byte[][] hashes) {
-        List<Node> parents = Lists.newArrayListWithCapacity(hashes.length / 2);
+    // number of nodes at the level, 0 being the level right above the leaves
+    public int getNodeCount(int level) {
+        return levels[level].length / HASH_LENGTH;
+    }
 
-        for (int i = 0; i < hashes.length - 1; i += 2) {
-            Node leaf1 = constructLeafNode(hashes[i]);
-            Node leaf2 = constructLeafNode(hashes[i + 1]);
+    // copy of the hash of a node
+    public byte[] getNode(int level, int index) {
+        byte[] hash = new byte[HASH_LENGTH];
+        System.arraycopy(levels[level], index * HASH_LENGTH, hash, 0, HASH_LENGTH);
+        return hash;
+    }
 
-            Node parent = constructInternalNode(leaf1, leaf2);
-            parents.add(parent);
+    // sibling path from the leaf to the root
+    public MerkleProof getProof(int leafIndex) {
+        if (leafIndex < 0 || leafIndex >= leafHashes.length) {
+            throw new RuntimeException("ERROR: Fail to get merkle proof ! leafIndex out of range ! leafIndex=" + leafIndex);
         }
-
-        if (hashes.length % 2 != 0) {
-            Node leaf = constructLeafNode(hashes[hashes.length - 1]);
-            // 奇数个节点的情况，复制最后一个节点
-            Node parent = constructInternalNode(leaf, leaf);
-            parents.add(parent);
+        List<MerkleProof.Step> steps = new ArrayList<>();
+        // the last leaf of an odd count is hashed with itself
+        int siblingLeaf = (leafIndex ^ 1) < leafHashes.length ? leafIndex ^ 1 : leafIndex;
+        steps.add(new MerkleProof.Step(Hex.encodeHexString(leafHashes[siblingLeaf]), (leafIndex & 1) == 1));
+        int index = leafIndex / 2;
+        for (int level = 0; level < levels.length - 1; level++) {
+            // the last node of an odd count is carried up without hashing
+            if ((index ^ 1) < this.getNodeCount(level)) {
+                steps.add(new MerkleProof.Step(Hex.encodeHexString(this.getNode(level, index ^ 1)), (index & 1) == 1));
+            }
+            index /= 2;
         }
-
-        return parents;
+        return new MerkleProof(Hex.encodeHexString(leafHashes[leafIndex]), leafIndex, leafHashes.length, steps,
+                Hex.encodeHexString(this.getRoot()));
     }
 
-    // build leaf node
-    private static Node constructLeafNode(byte[] hash) {
-        Node leaf = new Node();
-        leaf.hash = hash;
-        return leaf;
+    // hash pairs of leaves, the last leaf of an odd count is hashed with itself
+    private static byte[] bottomLevel(byte[][] leaves) {
+        int parents = (leaves.length + 1) / 2;
+        byte[] level = new byte[parents * HASH_LENGTH];
+        forEachRange(parents, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                byte[] left = leaves[2 * i];
+                byte[] right = 2 * i + 1 < leaves.length ? leaves[2 * i + 1] : left;
+                HashUtils.sha256().update(left).update(right).digestInto(level, i * HASH_LENGTH);
+            }
+        });
+        return level;
     }
 
-    // build internal node
-    private Node constructInternalNode(Node leftChild, Node rightChild) {
-        Node parent = new Node();
-        if (rightChild == null) {
-            parent.hash = leftChild.hash;
-        } else {
-            parent.hash = internalHash(leftChild.hash, rightChild.hash);
+    // hash pairs of nodes, the last node of an odd count is carried up unchanged
+    private static byte[] internalLevel(byte[] children) {
+        int childCount = children.length / HASH_LENGTH;
+        int parents = (childCount + 1) / 2;
+        byte[] level = new byte[parents * HASH_LENGTH];
+        forEachRange(childCount / 2, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                HashUtils.sha256(children, 2 * i * HASH_LENGTH, 2 * HASH_LENGTH, level, i * HASH_LENGTH);
+            }
+        });
+        if (childCount % 2 != 0) {
+            System.arraycopy(children, (childCount - 1) * HASH_LENGTH, level, (parents - 1) * HASH_LENGTH, HASH_LENGTH);
         }
-        parent.left = leftChild;
-        parent.right = rightChild;
-        return parent;
+        return level;
     }
 
-    // calculate internal node hash
-    private byte[] internalHash(byte[] leftChildHash, byte[] rightChildHash) {
-        byte[] mergedBytes = ByteUtils.merge(leftChildHash, rightChildHash);
-        return DigestUtils.sha256(mergedBytes);
+    // run the task over [0, count), split into ranges on the common pool when the level is large
+    private static void forEachRange(int count, RangeTask task) {
+        if (count <= PARALLEL_THRESHOLD) {
+            task.run(0, count);
+            return;
+        }
+        int chunks = (count + PARALLEL_THRESHOLD - 1) / PARALLEL_THRESHOLD;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int from = chunk * PARALLEL_THRESHOLD;
+            task.run(from, Math.min(from + PARALLEL_THRESHOLD, count));
+        });
     }
 
-
-    // MerkleTree Node
-    @Data
-    public static class Node {
-        private byte[] hash;
-        private Node left;
-        private Node right;
+    @FunctionalInterface
+    private interface RangeTask {
+        void run(int from, int to);
     }
-
-
 }
@@ -0,0 +1,24 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.util.Hash256;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// reference to one output of a transaction
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutPoint {
+    private Hash256 txId;
+    private int outIndex;
+
+    public OutPoint(byte[] txId, int outIndex) {
+        this(Hash256.of(txId), outIndex);
+    }
+
+    @Override
+    public String toString() {
+        return txId + ":" + outIndex;
+    }
+}
@@ -0,0 +1,9 @@
+package com.clover.blockchain.transaction;
+
+// the confirmed funds of the sender fall short only because pending transactions spend some of them
+public class PendingFundsException extends RuntimeException {
+
+    public PendingFundsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,36 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.util.CryptoUtils;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+
+// signature of one transaction input, checked independently of the other inputs
+@Slf4j
+@Getter
+@AllArgsConstructor
+public class SignatureCheck {
+
+    private final byte[] txId;
+
+    private final int inputIndex;
+
+    // data signed by the input, see Transaction#sigHash
+    private final byte[] sigHash;
+
+    // uncompressed public key: 0x04 followed by the x and y coordinates
+    private final byte[] pubKey;
+
+    private final byte[] signature;
+
+    public boolean verify() {
+        try {
+            return CryptoUtils.verify(pubKey, sigHash, signature);
+        } catch (Exception e) {
+            // a malformed key or signature makes the input invalid, it does not fail the whole verification
+            log.error("Fail to verify signature ! txId=" + Hex.encodeHexString(txId) + ", inputIndex=" + inputIndex, e);
+            return false;
+        }
+    }
+}
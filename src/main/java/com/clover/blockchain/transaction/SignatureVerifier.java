@@ -0,0 +1,159 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.util.HashUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks input signatures in parallel.
+ * The checks of a transaction, or of all transactions of a block, are independent, so they are spread over a
+ * dedicated pool of a bounded size; the first invalid signature stops the remaining checks.
+ * Valid signatures are remembered, so a transaction verified when it is sent is not verified again when it is mined.
+ */
+@Slf4j
+@Component
+public class SignatureVerifier {
+
+    // rough heap footprint of a cache entry: 32 byte key, its buffer and the cache entry itself
+    private static final int CACHE_ENTRY_ESTIMATE = 160;
+
+    // mixed into every cache key, so the keys of this node can not be computed from outside
+    private static final byte[] SALT = new byte[32];
+
+    static {
+        new SecureRandom().nextBytes(SALT);
+    }
+
+    // the verifier of the application context, signatures are checked from static code
+    private static SignatureVerifier verifier;
+
+    private final ForkJoinPool pool;
+
+    // keys of signatures found valid, see cacheKey
+    private final Cache<ByteBuffer, Boolean> validSignatures;
+
+    @Autowired
+    public SignatureVerifier(@Value("${verify.threads}") int threads, @Value("${verify.cache-size}") long cacheSize) {
+        // 0 keeps one thread per available core
+        this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+        this.validSignatures = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+        SignatureVerifier.verifier = this;
+    }
+
+    // first check with an invalid signature in list order, null if all of them are valid
+    // checks behind an invalid one are skipped, the ones before it still run so the first one is found
+    public static SignatureCheck findInvalid(List<SignatureCheck> checks) {
+        return verifier.findFirstInvalid(checks);
+    }
+
+    private SignatureCheck findFirstInvalid(List<SignatureCheck> checks) {
+        if (checks.size() < 2) {
+            return checks.isEmpty() || this.verify(checks.get(0)) ? null : checks.get(0);
+        }
+        // worker w checks the inputs w, w + n, w + 2n, ... in ascending order and stops at the first invalid one found
+        int workerCount = Math.min(pool.getParallelism(), checks.size());
+        AtomicInteger firstInvalid = new AtomicInteger(checks.size());
+        List<Callable<Void>> workers = new ArrayList<>(workerCount);
+        for (int w = 0; w < workerCount; w++) {
+            int firstIndex = w;
+            workers.add(() -> {
+                for (int i = firstIndex; i < firstInvalid.get(); i += workerCount) {
+                    if (!this.verify(checks.get(i))) {
+                        firstInvalid.accumulateAndGet(i, Math::min);
+                    }
+                }
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> worker : pool.invokeAll(workers)) {
+                worker.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("ERROR: Interrupted while verifying signatures ! ", e);
+        } catch (ExecutionException e) {
+            log.error("Fail to verify signatures ! ", e);
+            throw new RuntimeException("Fail to verify signatures ! ", e);
+        }
+        return firstInvalid.get() < checks.size() ? checks.get(firstInvalid.get()) : null;
+    }
+
+    public static boolean verify(List<SignatureCheck> checks) {
+        return findInvalid(checks) == null;
+    }
+
+    public static SignatureCacheStats getCacheStats() {
+        Cache<ByteBuffer, Boolean> validSignatures = verifier.validSignatures;
+        CacheStats stats = validSignatures.stats();
+        long entries = validSignatures.size();
+        return new SignatureCacheStats(entries, entries * CACHE_ENTRY_ESTIMATE, stats.hitCount(), stats.missCount(),
+                stats.hitRate());
+    }
+
+    // the ECDSA check is skipped for signatures verified before, only valid ones are cached
+    private boolean verify(SignatureCheck check) {
+        if (check.getPubKey() == null || check.getSignature() == null) {
+            return false;
+        }
+        ByteBuffer key = cacheKey(check);
+        if (validSignatures.getIfPresent(key) != null) {
+            return true;
+        }
+        if (!check.verify()) {
+            return false;
+        }
+        validSignatures.put(key, Boolean.TRUE);
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // SHA-256 over the salt, the signed hash, the public key and the signature
+    // every field is length prefixed, so a different split of the same bytes into key and signature is a different key
+    private static ByteBuffer cacheKey(SignatureCheck check) {
+        return ByteBuffer.wrap(HashUtils.sha256()
+                .update(SALT)
+                .putInt(check.getSigHash().length)
+                .update(check.getSigHash())
+                .putInt(check.getPubKey().length)
+                .update(check.getPubKey())
+                .putInt(check.getSignature().length)
+                .update(check.getSignature())
+                .digest());
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class SignatureCacheStats {
+        private final long cachedSignatures;
+        private final long estimatedBytes;
+        private final long hits;
+        private final long misses;
+        private final double hitRate;
+    }
+}
@@ -1,5 +1,6 @@
 package com.clover.blockchain.transaction;
 
+import com.clover.blockchain.util.Hash256;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -12,6 +13,8 @@ import java.util.Map;
 public class SpendableOutputResult {
 
     private int accumulated;
-    private Map<String, int[]> unspentOuts;
+    // value of the outputs skipped because pending transactions spend them, only complete if accumulated falls short
+    private int pending;
+    private Map<Hash256, int[]> unspentOuts;
 
 }
@@ -1,9 +1,12 @@
 package com.clover.blockchain.transaction;
 
 import com.clover.blockchain.util.BtcAddressUtils;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.apache.commons.codec.binary.Hex;
 
 import java.util.Arrays;
 
@@ -11,11 +14,30 @@ import java.util.Arrays;
 @AllArgsConstructor
 @NoArgsConstructor
 public class TXInput {
+    @JsonIgnore
     private byte[] txId;
     private int txOutputIndex;
+    @JsonIgnore
     private byte[] signature;
+    @JsonIgnore
     private byte[] pubKey;
 
+    // hex encoded in JSON, like the transaction id used to look transactions up
+    @JsonProperty("txId")
+    public String txIdHex() {
+        return txId == null ? null : Hex.encodeHexString(txId);
+    }
+
+    @JsonProperty("signature")
+    public String signatureHex() {
+        return signature == null ? null : Hex.encodeHexString(signature);
+    }
+
+    @JsonProperty("pubKey")
+    public String pubKeyHex() {
+        return pubKey == null ? null : Hex.encodeHexString(pubKey);
+    }
+
     public boolean usesKey(byte[] pubKeyHash) {
         byte[] lockingHash = BtcAddressUtils.ripeMD160Hash(this.getPubKey());
         return Arrays.equals(lockingHash, pubKeyHash);
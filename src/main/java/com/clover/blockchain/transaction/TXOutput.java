@@ -1,9 +1,12 @@
 package com.clover.blockchain.transaction;
 
 import com.clover.blockchain.util.Base58Check;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.apache.commons.codec.binary.Hex;
 
 import java.util.Arrays;
 
@@ -12,8 +15,15 @@ import java.util.Arrays;
 @NoArgsConstructor
 public class TXOutput {
     private int value;
+    @JsonIgnore
     private byte[] pubKeyHash;
 
+    // hex encoded in JSON
+    @JsonProperty("pubKeyHash")
+    public String pubKeyHashHex() {
+        return pubKeyHash == null ? null : Hex.encodeHexString(pubKeyHash);
+    }
+
     // create transaction output
     public static TXOutput newTXOutput(int value, String address) {
         // reserv conversion to byte array
@@ -1,32 +1,27 @@
 package com.clover.blockchain.transaction;
 
 import com.clover.blockchain.block.Blockchain;
-import com.clover.blockchain.kryo.KryoSerializer;
 import com.clover.blockchain.util.BtcAddressUtils;
+import com.clover.blockchain.util.CryptoUtils;
+import com.clover.blockchain.util.Hash256;
+import com.clover.blockchain.util.HashUtils;
 import com.clover.blockchain.wallet.Wallet;
 import com.clover.blockchain.wallet.WalletUtils;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPrivateKey;
-import org.bouncycastle.jce.ECNamedCurveTable;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.jce.spec.ECParameterSpec;
-import org.bouncycastle.jce.spec.ECPublicKeySpec;
-import org.bouncycastle.math.ec.ECPoint;
-
-import java.math.BigInteger;
-import java.security.KeyFactory;
-import java.security.PublicKey;
-import java.security.Security;
-import java.security.Signature;
+
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 @Data
@@ -36,18 +31,72 @@ import java.util.Map;
 public class Transaction {
     private static final int SUBSIDY = 10;
 
+    @JsonIgnore
     private byte[] txId;
     private TXInput[] inputs;
     private TXOutput[] outputs;
     private long createTime;
 
-    // calculate hash value of transaction details
+    // the transaction id, computed from the transaction details on first access and cached afterwards
+    public byte[] getTxId() {
+        if (this.txId == null) {
+            this.txId = this.hash();
+        }
+        return this.txId;
+    }
+
+    // hex encoded in JSON, the form GET /tx/{txid} takes
+    @JsonProperty("txId")
+    public String txIdHex() {
+        return Hex.encodeHexString(this.getTxId());
+    }
+
+    // calculate hash value of transaction details, the canonical encoding is streamed straight into the digest
     public byte[] hash() {
-        // Use serialization to deep copy the Transaction object
-        byte[] serializeBytes = KryoSerializer.serialize(this);
-        Transaction copyTx = (Transaction) KryoSerializer.deserialize(serializeBytes);
-        copyTx.setTxId(new byte[]{});
-        return DigestUtils.sha256(KryoSerializer.serialize(copyTx));
+        HashUtils.Sha256Builder digest = HashUtils.sha256();
+        this.writeCanonical(digest, -1, null);
+        return digest.digest();
+    }
+
+    // hash signed by the input at inputIndex, the public key hash of the output it spends takes the place of its public key
+    public byte[] sigHash(int inputIndex, byte[] prevPubKeyHash) {
+        HashUtils.Sha256Builder digest = HashUtils.sha256();
+        this.writeCanonical(digest, inputIndex, prevPubKeyHash);
+        return digest.digest();
+    }
+
+    /**
+     * Deterministic encoding of the transaction, neither the transaction id nor the signatures are part of it.
+     * With a signing input given, the public keys of all inputs are left out, except for that input,
+     * which carries the public key hash of the spent output instead.
+     */
+    private void writeCanonical(HashUtils.Sha256Builder digest, int signingInput, byte[] prevPubKeyHash) {
+        digest.putInt(this.getInputs().length);
+        for (int i = 0; i < this.getInputs().length; i++) {
+            TXInput txInput = this.getInputs()[i];
+            updateBytes(digest, txInput.getTxId());
+            digest.putInt(txInput.getTxOutputIndex());
+            if (signingInput < 0) {
+                updateBytes(digest, txInput.getPubKey());
+            } else {
+                updateBytes(digest, i == signingInput ? prevPubKeyHash : null);
+            }
+        }
+        digest.putInt(this.getOutputs().length);
+        for (TXOutput txOutput : this.getOutputs()) {
+            digest.putInt(txOutput.getValue());
+            updateBytes(digest, txOutput.getPubKeyHash());
+        }
+        digest.putLong(this.getCreateTime());
+    }
+
+    // length prefixed, -1 for null
+    private static void updateBytes(HashUtils.Sha256Builder digest, byte[] bytes) {
+        if (bytes == null) {
+            digest.putInt(-1);
+            return;
+        }
+        digest.putInt(bytes.length).update(bytes);
     }
 
     // create a coinbase transaction
@@ -60,11 +109,9 @@ public class Transaction {
         // create txn output
         TXOutput txOutput = TXOutput.newTXOutput(SUBSIDY, to);
         // create txn
-        Transaction tx = new Transaction(null, new TXInput[]{txInput},
+        // the txn id is computed on first access
+        return new Transaction(null, new TXInput[]{txInput},
                 new TXOutput[]{txOutput}, System.currentTimeMillis());
-        // set txn id
-        tx.setTxId(tx.hash());
-        return tx;
     }
 
     public boolean isCoinbase() {
@@ -81,20 +128,26 @@ public class Transaction {
 
         SpendableOutputResult result = new UTXOSet().blockchain(blockchain).findSpendableOutputs(pubKeyHash, amount);
         int accumulated = result.getAccumulated();
-        Map<String, int[]> unspentOuts = result.getUnspentOuts();
-
+        Map<Hash256, int[]> unspentOuts = result.getUnspentOuts();
+
+        if (accumulated < amount && accumulated + result.getPending() >= amount) {
+            // outputs of unconfirmed transactions, change included, can not be spent until they are mined
+            log.error("ERROR: Funds held by pending transactions ! accumulated=" + accumulated
+                    + ", pending=" + result.getPending() + ", amount=" + amount);
+            throw new PendingFundsException("ERROR: Not enough confirmed funds, " + result.getPending()
+                    + " are held by pending transactions, retry once they are mined ! ");
+        }
         if (accumulated < amount) {
             log.error("ERROR: Not enough funds ! accumulated=" + accumulated + ", amount=" + amount);
             throw new RuntimeException("ERROR: Not enough funds ! ");
         }
-        Iterator<Map.Entry<String, int[]>> iterator = unspentOuts.entrySet().iterator();
+        Iterator<Map.Entry<Hash256, int[]>> iterator = unspentOuts.entrySet().iterator();
 
         TXInput[] txInputs = {};
         while (iterator.hasNext()) {
-            Map.Entry<String, int[]> entry = iterator.next();
-            String txIdStr = entry.getKey();
+            Map.Entry<Hash256, int[]> entry = iterator.next();
+            byte[] txId = entry.getKey().getBytes();
             int[] outIds = entry.getValue();
-            byte[] txId = Hex.decodeHex(txIdStr);
             for (int outIndex : outIds) {
                 txInputs = ArrayUtils.add(txInputs, new TXInput(txId, outIndex, null, pubKey));
             }
@@ -107,120 +160,72 @@ public class Transaction {
         }
 
         Transaction newTx = new Transaction(null, txInputs, txOutput, System.currentTimeMillis());
-        newTx.setTxId(newTx.hash());
 
         blockchain.signTransaction(newTx, senderWallet.getPrivateKey());
 
         return newTx;
     }
 
-    // Create a copy of the transaction data for signing, the signature and pubKey of the transaction input need to be set to null
-    public Transaction trimmedCopy() {
-        TXInput[] tmpTXInputs = new TXInput[this.getInputs().length];
-        for (int i = 0; i < this.getInputs().length; i++) {
-            TXInput txInput = this.getInputs()[i];
-            tmpTXInputs[i] = new TXInput(txInput.getTxId(), txInput.getTxOutputIndex(), null, null);
-        }
-
-        TXOutput[] tmpTXOutputs = new TXOutput[this.getOutputs().length];
-        for (int i = 0; i < this.getOutputs().length; i++) {
-            TXOutput txOutput = this.getOutputs()[i];
-            tmpTXOutputs[i] = new TXOutput(txOutput.getValue(), txOutput.getPubKeyHash());
-        }
-
-        return new Transaction(this.getTxId(), tmpTXInputs, tmpTXOutputs, this.getCreateTime());
-    }
-
-    public void sign(BCECPrivateKey privateKey, Map<String, Transaction> prevTxMap) throws Exception {
+    public void sign(BCECPrivateKey privateKey, Map<Hash256, Transaction> prevTxMap) throws Exception {
         // The coinbase transaction information does not need to be signed, because there is no transaction input information
         if (this.isCoinbase()) {
             return;
         }
         // Verify again whether the transaction input in the transaction information is correct, that is, whether you can find the corresponding transaction data
         for (TXInput txInput : this.getInputs()) {
-            if (prevTxMap.get(Hex.encodeHexString(txInput.getTxId())) == null) {
+            if (prevTxMap.get(Hash256.of(txInput.getTxId())) == null) {
                 throw new RuntimeException("ERROR: Previous transaction is not correct");
             }
         }
 
-        // Create a copy of the transaction information used for signing
-        Transaction txCopy = this.trimmedCopy();
-
-        Security.addProvider(new BouncyCastleProvider());
-        Signature ecdsaSign = Signature.getInstance("SHA256withECDSA", BouncyCastleProvider.PROVIDER_NAME);
-        ecdsaSign.initSign(privateKey);
-
-        for (int i = 0; i < txCopy.getInputs().length; i++) {
-            TXInput txInputCopy = txCopy.getInputs()[i];
+        for (int i = 0; i < this.getInputs().length; i++) {
+            TXInput txInput = this.getInputs()[i];
             // Get the transaction data corresponding to the transaction input TxID
-            Transaction prevTx = prevTxMap.get(Hex.encodeHexString(txInputCopy.getTxId()));
+            Transaction prevTx = prevTxMap.get(Hash256.of(txInput.getTxId()));
             // Get the transaction output in the previous transaction corresponding to the transaction input
-            TXOutput prevTxOutput = prevTx.getOutputs()[txInputCopy.getTxOutputIndex()];
-            txInputCopy.setPubKey(prevTxOutput.getPubKeyHash());
-            txInputCopy.setSignature(null);
-            // Get the data to be signed, that is, the transaction ID
-            txCopy.setTxId(txCopy.hash());
-            txInputCopy.setPubKey(null);
+            TXOutput prevTxOutput = prevTx.getOutputs()[txInput.getTxOutputIndex()];
+            // Get the data to be signed, it is hashed straight from the transaction without building a copy
+            byte[] sigHash = this.sigHash(i, prevTxOutput.getPubKeyHash());
 
-            // Only sign the entire transaction information, that is, sign the transaction ID
-            ecdsaSign.update(txCopy.getTxId());
-            byte[] signature = ecdsaSign.sign();
+            // Only sign the hash of the entire transaction information
+            byte[] signature = CryptoUtils.sign(privateKey, sigHash);
 
             // Assign the signature of the entire transaction data to the transaction input, because the transaction input needs to contain the signature of the entire transaction information
-            // Note that the obtained signature is assigned to the transaction input in the original transaction information
-            this.getInputs()[i].setSignature(signature);
+            txInput.setSignature(signature);
         }
     }
 
-    public boolean verify(Map<String, Transaction> prevTxMap) throws Exception {
+    // the input signatures are checked in parallel, see SignatureVerifier
+    public boolean verify(Map<Hash256, Transaction> prevTxMap) throws Exception {
+        return SignatureVerifier.verify(this.signatureChecks(prevTxMap));
+    }
+
+    // one signature check per input, empty for a coinbase transaction
+    public List<SignatureCheck> signatureChecks(Map<Hash256, Transaction> prevTxMap) {
         // Coinbase transaction information does not need to be signed, so it does not need to be verified
         if (this.isCoinbase()) {
-            return true;
+            return List.of();
         }
 
         // Verify again whether the transaction input in the transaction information is correct, that is, whether you can find the corresponding transaction data
         for (TXInput txInput : this.getInputs()) {
-            if (prevTxMap.get(Hex.encodeHexString(txInput.getTxId())) == null) {
+            if (prevTxMap.get(Hash256.of(txInput.getTxId())) == null) {
                 throw new RuntimeException("ERROR: Previous transaction is not correct");
             }
         }
 
-        // Create a copy of transaction information for signature verification
-        Transaction txCopy = this.trimmedCopy();
-
-        Security.addProvider(new BouncyCastleProvider());
-        ECParameterSpec ecParameters = ECNamedCurveTable.getParameterSpec("secp256k1");
-        KeyFactory keyFactory = KeyFactory.getInstance("ECDSA", BouncyCastleProvider.PROVIDER_NAME);
-        Signature ecdsaVerify = Signature.getInstance("SHA256withECDSA", BouncyCastleProvider.PROVIDER_NAME);
-
+        List<SignatureCheck> checks = new ArrayList<>(this.getInputs().length);
         for (int i = 0; i < this.getInputs().length; i++) {
             TXInput txInput = this.getInputs()[i];
             // Get the transaction data corresponding to the transaction input TxID
-            Transaction prevTx = prevTxMap.get(Hex.encodeHexString(txInput.getTxId()));
+            Transaction prevTx = prevTxMap.get(Hash256.of(txInput.getTxId()));
             // Get the transaction output in the previous transaction corresponding to the transaction input
             TXOutput prevTxOutput = prevTx.getOutputs()[txInput.getTxOutputIndex()];
-
-            TXInput txInputCopy = txCopy.getInputs()[i];
-            txInputCopy.setSignature(null);
-            txInputCopy.setPubKey(prevTxOutput.getPubKeyHash());
-            // Get the data to be signed, that is, the transaction ID
-            txCopy.setTxId(txCopy.hash());
-            txInputCopy.setPubKey(null);
-
-            // Use elliptic curve x, y points to generate public key Key
-            BigInteger x = new BigInteger(1, Arrays.copyOfRange(txInput.getPubKey(), 1, 33));
-            BigInteger y = new BigInteger(1, Arrays.copyOfRange(txInput.getPubKey(), 33, 65));
-            ECPoint ecPoint = ecParameters.getCurve().createPoint(x, y);
-
-            ECPublicKeySpec keySpec = new ECPublicKeySpec(ecPoint, ecParameters);
-            PublicKey publicKey = keyFactory.generatePublic(keySpec);
-            ecdsaVerify.initVerify(publicKey);
-            ecdsaVerify.update(txCopy.getTxId());
-            if (!ecdsaVerify.verify(txInput.getSignature())) {
-                return false;
-            }
+            // Get the data that was signed
+            byte[] sigHash = this.sigHash(i, prevTxOutput.getPubKeyHash());
+            checks.add(new SignatureCheck(this.getTxId(), i, sigHash, txInput.getPubKey(), txInput.getSignature()));
         }
-        return true;
+        return checks;
     }
 
     @Override
@@ -0,0 +1,18 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.util.Hash256;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// position of a transaction in the chain, value of the transaction index
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TxLocation {
+
+    private Hash256 blockHash;
+
+    private int txIndex;
+
+}
@@ -0,0 +1,360 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.block.Block;
+import com.clover.blockchain.block.BlockHeader;
+import com.clover.blockchain.block.HeaderChain;
+import com.clover.blockchain.service.BlockWriteBatch;
+import com.clover.blockchain.service.RocksDBService;
+import com.clover.blockchain.util.Hash256;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.rocksdb.Snapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Write-back cache of coins on top of the chainstate on disk.
+ * Connected blocks only change the cache; the changes reach RocksDB in a single batch when the estimated memory
+ * of the cache exceeds its budget or after a number of blocks. Coins created and spent between two flushes
+ * never touch the disk.
+ * A coin is FRESH when the disk does not know it, so spending it simply forgets it, and DIRTY when the disk
+ * has to be updated on the next flush.
+ * Every flush records the block the chainstate is up to date with, blocks connected after it are replayed at startup.
+ */
+@Slf4j
+@Component
+public class UTXOCache {
+
+    // rough heap footprint of a cached coin: map entry, outpoint, txid, output and public key hash
+    private static final int COIN_MEMORY_ESTIMATE = 256;
+
+    private final RocksDBService rocksDBService;
+
+    private final HeaderChain headerChain;
+
+    private final long maxBytes;
+
+    private final int flushIntervalBlocks;
+
+    private final Map<OutPoint, Coin> coins = new HashMap<>();
+
+    // block changes and flushes take the write lock, queries the read lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // block the cached view is up to date with
+    private Hash256 bestBlockHash;
+
+    private int blocksSinceFlush;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private long flushCount;
+
+    private long totalFlushNanos;
+
+    private long lastFlushNanos;
+
+    @Autowired
+    public UTXOCache(RocksDBService rocksDBService, HeaderChain headerChain,
+                     @Value("${utxo.cache-max-bytes}") long maxBytes,
+                     @Value("${utxo.flush-interval-blocks}") int flushIntervalBlocks) {
+        this.rocksDBService = rocksDBService;
+        this.headerChain = headerChain;
+        this.maxBytes = maxBytes;
+        this.flushIntervalBlocks = flushIntervalBlocks;
+    }
+
+    // bring the chainstate up to date with blocks connected after the last flush
+    @PostConstruct
+    public void replay() {
+        BlockHeader tip = headerChain.getTip();
+        if (tip == null) {
+            return;
+        }
+        Hash256 flushedHash = rocksDBService.getUTXOBestBlockHash();
+        if (tip.getHash().equals(flushedHash)) {
+            this.bestBlockHash = flushedHash;
+            return;
+        }
+        BlockHeader flushed = flushedHash == null ? null : headerChain.getHeader(flushedHash);
+        long fromHeight = flushed == null ? 0 : flushed.getHeight() + 1;
+        log.info("Replay blocks into UTXO set ! fromHeight=" + fromHeight + ", toHeight=" + tip.getHeight());
+        // outputs of replayed blocks may already be on disk, so they are never FRESH and spending them deletes them there;
+        // that makes replaying idempotent and starting too early harmless
+        for (long height = fromHeight; height <= tip.getHeight(); height++) {
+            this.connectBlock(rocksDBService.getBlock(headerChain.getHeader(height).getHash()), false);
+        }
+        this.flush();
+    }
+
+    @PreDestroy
+    public void close() {
+        this.flush();
+    }
+
+    // spend the inputs and add the outputs of the block
+    public void connectBlock(Block block) {
+        this.connectBlock(block, true);
+    }
+
+    private void connectBlock(Block block, boolean newOutputs) {
+        lock.writeLock().lock();
+        try {
+            for (Transaction transaction : block.getTransactions()) {
+                if (!transaction.isCoinbase()) {
+                    for (TXInput txInput : transaction.getInputs()) {
+                        this.spend(new OutPoint(txInput.getTxId(), txInput.getTxOutputIndex()));
+                    }
+                }
+                TXOutput[] txOutputs = transaction.getOutputs();
+                for (int outIndex = 0; outIndex < txOutputs.length; outIndex++) {
+                    this.add(new OutPoint(transaction.getTxId(), outIndex), txOutputs[outIndex], newOutputs);
+                }
+            }
+            this.bestBlockHash = block.getHash();
+            this.blocksSinceFlush++;
+            if (this.memoryUsage() > maxBytes || blocksSinceFlush >= flushIntervalBlocks) {
+                this.flush();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // write every dirty coin and the best block to disk in one batch, then empty the cache
+    public void flush() {
+        lock.writeLock().lock();
+        try {
+            if (bestBlockHash == null) {
+                return;
+            }
+            long start = System.nanoTime();
+            int written = 0;
+            try (BlockWriteBatch batch = rocksDBService.newBlockWriteBatch()) {
+                for (Map.Entry<OutPoint, Coin> entry : coins.entrySet()) {
+                    Coin coin = entry.getValue();
+                    if (!coin.isDirty()) {
+                        continue;
+                    }
+                    OutPoint outPoint = entry.getKey();
+                    if (coin.isSpent()) {
+                        batch.deleteUTXO(outPoint.getTxId().getBytes(), outPoint.getOutIndex(), coin.getOutput());
+                    } else {
+                        batch.putUTXO(outPoint.getTxId().getBytes(), outPoint.getOutIndex(), coin.getOutput());
+                    }
+                    written++;
+                }
+                batch.putUTXOBestBlockHash(bestBlockHash);
+                batch.commit();
+            }
+            coins.clear();
+            blocksSinceFlush = 0;
+            lastFlushNanos = System.nanoTime() - start;
+            totalFlushNanos += lastFlushNanos;
+            flushCount++;
+            log.info("Flushed UTXO cache ! coins=" + written + ", bestBlockHash=" + bestBlockHash
+                    + ", latencyMs=" + lastFlushNanos / 1_000_000 + ", hitRate=" + this.hitRate());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // replace the chainstate on disk with the unspent outputs up to bestBlockHash and forget every cached coin
+    // queries wait until the load is done, so they never see a half-wiped chainstate
+    public void reload(Map<OutPoint, TXOutput> utxos, Hash256 bestBlockHash, ForkJoinPool pool) {
+        lock.writeLock().lock();
+        try {
+            coins.clear();
+            blocksSinceFlush = 0;
+            rocksDBService.loadUTXOs(utxos, bestBlockHash, pool);
+            this.bestBlockHash = bestBlockHash;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // unspent output at the outpoint as seen through the cache, null if it is spent or unknown
+    public TXOutput getUTXO(byte[] txId, int outIndex) {
+        lock.readLock().lock();
+        try {
+            Coin coin = coins.get(new OutPoint(txId, outIndex));
+            if (coin != null) {
+                return coin.isSpent() ? null : coin.getOutput();
+            }
+            return rocksDBService.getUTXO(txId, outIndex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // walk through the unspent outputs locked with the public key hash, cached changes applied on top of the address index
+    public void iterateUTXOs(byte[] pubKeyHash, RocksDBService.UTXOVisitor visitor) {
+        lock.readLock().lock();
+        try {
+            Set<OutPoint> visited = new HashSet<>();
+            for (Map.Entry<OutPoint, Coin> entry : coins.entrySet()) {
+                Coin coin = entry.getValue();
+                if (!coin.isDirty() || coin.isSpent() || !coin.getOutput().isLockedWithKey(pubKeyHash)) {
+                    continue;
+                }
+                OutPoint outPoint = entry.getKey();
+                visited.add(outPoint);
+                if (!visitor.visit(outPoint.getTxId().getBytes(), outPoint.getOutIndex(), coin.getOutput())) {
+                    return;
+                }
+            }
+            rocksDBService.iterateUTXOs(pubKeyHash, (txId, outIndex, txOutput) -> {
+                OutPoint outPoint = new OutPoint(txId, outIndex);
+                Coin coin = coins.get(outPoint);
+                if ((coin != null && coin.isSpent()) || visited.contains(outPoint)) {
+                    return true;
+                }
+                return visitor.visit(txId, outIndex, txOutput);
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // add the value of every unspent output locked with one of the public key hashes to the balance of that hash,
+    // read from the address index, by address or in one pass on the pool, with the cached changes applied on top
+    public void sumBalances(Map<ByteBuffer, LongAdder> balances, ForkJoinPool pool) {
+        // the cached changes and a snapshot of the disk are taken together under the read lock,
+        // the long scan then runs on the snapshot without holding back connectBlock
+        Set<OutPoint> dirtyOutPoints = new HashSet<>();
+        Snapshot snapshot;
+        lock.readLock().lock();
+        try {
+            for (Map.Entry<OutPoint, Coin> entry : coins.entrySet()) {
+                Coin coin = entry.getValue();
+                if (!coin.isDirty()) {
+                    continue;
+                }
+                dirtyOutPoints.add(entry.getKey());
+                if (coin.isSpent()) {
+                    continue;
+                }
+                LongAdder balance = balances.get(ByteBuffer.wrap(coin.getOutput().getPubKeyHash()));
+                if (balance != null) {
+                    balance.add(coin.getOutput().getValue());
+                }
+            }
+            snapshot = rocksDBService.getSnapshot();
+        } finally {
+            lock.readLock().unlock();
+        }
+        try {
+            rocksDBService.scanAddressIndex(snapshot, balances.keySet(), (pubKeyHash, key, value) -> {
+                LongAdder balance = balances.get(pubKeyHash);
+                if (balance == null) {
+                    return;
+                }
+                // spent coins are gone, dirty unspent ones were counted from the cache already
+                if (!dirtyOutPoints.isEmpty() && dirtyOutPoints.contains(RocksDBService.addressIndexOutPoint(key))) {
+                    return;
+                }
+                balance.add(value);
+            }, pool);
+        } finally {
+            rocksDBService.releaseSnapshot(snapshot);
+        }
+    }
+
+    public UTXOCacheStats getStats() {
+        lock.readLock().lock();
+        try {
+            return new UTXOCacheStats(coins.size(), this.memoryUsage(), hits.get(), misses.get(), this.hitRate(),
+                    flushCount, lastFlushNanos / 1_000_000.0,
+                    flushCount == 0 ? 0 : totalFlushNanos / 1_000_000.0 / flushCount);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void spend(OutPoint outPoint) {
+        Coin coin = this.fetch(outPoint);
+        if (coin == null || coin.isSpent()) {
+            return;
+        }
+        if (coin.isFresh()) {
+            // the disk never saw it, so there is nothing to delete
+            coins.remove(outPoint);
+            return;
+        }
+        coin.setSpent(true);
+        coin.setDirty(true);
+    }
+
+    private void add(OutPoint outPoint, TXOutput output, boolean newOutput) {
+        Coin existing = coins.get(outPoint);
+        // a coin that was loaded from disk, or spent and still waiting to be deleted there, has to overwrite the disk entry
+        boolean fresh = newOutput && (existing == null || existing.isFresh());
+        coins.put(outPoint, new Coin(output, false, fresh, true));
+    }
+
+    // cached coin, loaded from disk on a miss
+    private Coin fetch(OutPoint outPoint) {
+        Coin coin = coins.get(outPoint);
+        if (coin != null) {
+            hits.incrementAndGet();
+            return coin;
+        }
+        misses.incrementAndGet();
+        TXOutput output = rocksDBService.getUTXO(outPoint.getTxId().getBytes(), outPoint.getOutIndex());
+        if (output == null) {
+            return null;
+        }
+        coin = new Coin(output, false, false, false);
+        coins.put(outPoint, coin);
+        return coin;
+    }
+
+    private long memoryUsage() {
+        return (long) coins.size() * COIN_MEMORY_ESTIMATE;
+    }
+
+    private double hitRate() {
+        long lookups = hits.get() + misses.get();
+        return lookups == 0 ? 0 : (double) hits.get() / lookups;
+    }
+
+    @Data
+    @AllArgsConstructor
+    private static class Coin {
+        private TXOutput output;
+        private boolean spent;
+        private boolean fresh;
+        private boolean dirty;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class UTXOCacheStats {
+        private final int cachedCoins;
+        private final long estimatedBytes;
+        private final long hits;
+        private final long misses;
+        private final double hitRate;
+        private final long flushCount;
+        private final double lastFlushMillis;
+        private final double averageFlushMillis;
+    }
+}
@@ -0,0 +1,141 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.block.Block;
+import com.clover.blockchain.block.BlockHeader;
+import com.clover.blockchain.block.Blockchain;
+import com.clover.blockchain.block.HeaderChain;
+import com.clover.blockchain.service.RocksDBService;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
+
+/**
+ * Rebuilds the UTXO set in a single forward pass over the chain.
+ * Blocks are read and decoded in parallel, a range of heights at a time, and applied in height order:
+ * inputs remove the outputs they spend, outputs are added, so every block is visited exactly once.
+ * The result is bulk loaded into the chainstate, see RocksDBService#loadUTXOs.
+ * Decoding, the bulk load and the address index scans of UTXOCache#sumBalances share one pool sized by
+ * utxo.reindex-threads, so they never occupy the common pool.
+ */
+@Slf4j
+@Component
+public class UTXOReindexer {
+
+    // heights decoded in parallel before they are applied
+    private static final int BATCH_BLOCKS = 256;
+
+    private final RocksDBService rocksDBService;
+
+    private final HeaderChain headerChain;
+
+    private final UTXOCache utxoCache;
+
+    @Getter
+    private final ForkJoinPool pool;
+
+    // heights applied so far and in total, for progress reporting
+    private volatile long processedBlocks;
+
+    private volatile long totalBlocks;
+
+    @Autowired
+    public UTXOReindexer(RocksDBService rocksDBService, HeaderChain headerChain, UTXOCache utxoCache,
+                         @Value("${utxo.reindex-threads}") int threads) {
+        this.rocksDBService = rocksDBService;
+        this.headerChain = headerChain;
+        this.utxoCache = utxoCache;
+        // 0 keeps one thread per available core
+        this.pool = new ForkJoinPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+    }
+
+    public void reindex() {
+        // blocks must not be connected while the chainstate is rebuilt
+        synchronized (Blockchain.class) {
+            BlockHeader tip = headerChain.getTip();
+            if (tip == null) {
+                return;
+            }
+            long start = System.currentTimeMillis();
+            totalBlocks = tip.getHeight() + 1;
+            processedBlocks = 0;
+            log.info("Start to reIndex UTXO set ! blocks=" + totalBlocks);
+
+            Map<OutPoint, TXOutput> utxos = new HashMap<>();
+            for (long from = 0; from < totalBlocks; from += BATCH_BLOCKS) {
+                Block[] blocks = this.decode(from, Math.min(from + BATCH_BLOCKS, totalBlocks));
+                for (Block block : blocks) {
+                    apply(block, utxos);
+                }
+                processedBlocks = from + blocks.length;
+                log.info("ReIndex UTXO set progress ! blocks=" + processedBlocks + "/" + totalBlocks
+                        + " (" + (processedBlocks * 100 / totalBlocks) + "%), utxos=" + utxos.size());
+            }
+
+            utxoCache.reload(utxos, tip.getHash(), pool);
+            log.info("ReIndex UTXO set finished ! blocks=" + totalBlocks + ", utxos=" + utxos.size()
+                    + ", elapsedMs=" + (System.currentTimeMillis() - start));
+        }
+    }
+
+    // blocks applied by the running or last reindex
+    public ReindexProgress getProgress() {
+        long processed = processedBlocks;
+        long total = totalBlocks;
+        return new ReindexProgress(processed, total, total == 0 ? 1 : (double) processed / total);
+    }
+
+    // read and decode the blocks of the height range in parallel, txids are computed on the way
+    private Block[] decode(long fromHeight, long toHeight) {
+        try {
+            return pool.submit(() -> LongStream.range(fromHeight, toHeight).parallel()
+                    .mapToObj(height -> {
+                        Block block = rocksDBService.readBlock(headerChain.getHeader(height).getHash());
+                        for (Transaction transaction : block.getTransactions()) {
+                            transaction.getTxId();
+                        }
+                        return block;
+                    })
+                    .toArray(Block[]::new)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            log.error("Fail to decode blocks ! fromHeight=" + fromHeight + ", toHeight=" + toHeight, e);
+            throw new RuntimeException("Fail to decode blocks ! fromHeight=" + fromHeight, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    private static void apply(Block block, Map<OutPoint, TXOutput> utxos) {
+        for (Transaction transaction : block.getTransactions()) {
+            if (!transaction.isCoinbase()) {
+                for (TXInput txInput : transaction.getInputs()) {
+                    utxos.remove(new OutPoint(txInput.getTxId(), txInput.getTxOutputIndex()));
+                }
+            }
+            TXOutput[] txOutputs = transaction.getOutputs();
+            for (int outIndex = 0; outIndex < txOutputs.length; outIndex++) {
+                utxos.put(new OutPoint(transaction.getTxId(), outIndex), txOutputs[outIndex]);
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class ReindexProgress {
+        private final long processedBlocks;
+        private final long totalBlocks;
+        private final double progress;
+    }
+}
@@ -3,22 +3,25 @@ package com.clover.blockchain.transaction;
 import com.clover.blockchain.block.Block;
 import com.clover.blockchain.block.Blockchain;
 import com.clover.blockchain.config.RocksDBConfig;
-import com.clover.blockchain.kryo.KryoSerializer;
 import com.clover.blockchain.service.RocksDBService;
+import com.clover.blockchain.util.Hash256;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
-import lombok.Synchronized;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.lang3.ArrayUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Pool of unspent transaction outputs
+ * Every unspent output is stored under its outpoint (txid + output index), and indexed by the public key hash it is locked with
  */
 @Slf4j
 @Component
@@ -32,10 +35,20 @@ public class UTXOSet {
 
     private static RocksDBService rocksDBService;
 
+    private static Mempool mempool;
+
+    private static UTXOCache utxoCache;
+
+    private static UTXOReindexer utxoReindexer;
+
     @Autowired
-    public UTXOSet(RocksDBService rocksDBService, RocksDBConfig rocksDBConfig) {
+    public UTXOSet(RocksDBService rocksDBService, RocksDBConfig rocksDBConfig, Mempool mempool, UTXOCache utxoCache,
+                   UTXOReindexer utxoReindexer) {
         this.rocksDBService = rocksDBService;
         this.rocksDBConfig = rocksDBConfig;
+        this.mempool = mempool;
+        this.utxoCache = utxoCache;
+        this.utxoReindexer = utxoReindexer;
     }
 
     public UTXOSet blockchain(Blockchain blockchain) {
@@ -43,65 +56,57 @@ public class UTXOSet {
         return this;
     }
 
-    // Find deals to spend
+    // Find deals to spend, outputs already spent by pending transactions are skipped and only counted as pending
+    // only the outputs of the address are read, through the cache and the address index
     public SpendableOutputResult findSpendableOutputs(byte[] pubKeyHash, int amount) {
-        Map<String, int[]> unspentOuts = Maps.newHashMap();
-        int accumulated = 0;
-        Map<String, byte[]> chainstateBucket = rocksDBConfig.getChainStateBucket();
-        for (Map.Entry<String, byte[]> entry : chainstateBucket.entrySet()) {
-            String txId = entry.getKey();
-            TXOutput[] txOutputs = (TXOutput[]) KryoSerializer.deserialize(entry.getValue());
-
-            for (int outId = 0; outId < txOutputs.length; outId++) {
-                TXOutput txOutput = txOutputs[outId];
-                if (txOutput.isLockedWithKey(pubKeyHash) && accumulated < amount) {
-                    accumulated += txOutput.getValue();
-
-                    int[] outIds = unspentOuts.get(txId);
-                    if (outIds == null) {
-                        outIds = new int[]{outId};
-                    } else {
-                        outIds = ArrayUtils.add(outIds, outId);
-                    }
-                    unspentOuts.put(txId, outIds);
-                    if (accumulated >= amount) {
-                        break;
-                    }
-                }
+        Map<Hash256, int[]> unspentOuts = Maps.newHashMap();
+        int[] accumulated = {0};
+        int[] pending = {0};
+        utxoCache.iterateUTXOs(pubKeyHash, (txIdBytes, outId, txOutput) -> {
+            Hash256 txId = Hash256.of(txIdBytes);
+            if (mempool.isSpent(txId, outId)) {
+                pending[0] += txOutput.getValue();
+                return true;
             }
-        }
-        return new SpendableOutputResult(accumulated, unspentOuts);
+            accumulated[0] += txOutput.getValue();
+
+            int[] outIds = unspentOuts.get(txId);
+            if (outIds == null) {
+                outIds = new int[]{outId};
+            } else {
+                outIds = ArrayUtils.add(outIds, outId);
+            }
+            unspentOuts.put(txId, outIds);
+            return accumulated[0] < amount;
+        });
+        return new SpendableOutputResult(accumulated[0], pending[0], unspentOuts);
     }
 
 
     // Find all UTXOs corresponding to the wallet address
     public TXOutput[] findUTXOs(byte[] pubKeyHash) {
-        TXOutput[] utxos = {};
-        Map<String, byte[]> chainstateBucket = rocksDBConfig.getChainStateBucket();
-        if (chainstateBucket.isEmpty()) {
-            return utxos;
+        List<TXOutput> utxos = Lists.newArrayList();
+        utxoCache.iterateUTXOs(pubKeyHash, (txId, outIndex, txOutput) -> utxos.add(txOutput));
+        return utxos.toArray(new TXOutput[0]);
+    }
+
+    // balances of many public key hashes at once, in the order given, see UTXOCache#sumBalances
+    public long[] getBalances(List<byte[]> pubKeyHashes) {
+        Map<ByteBuffer, LongAdder> balances = Maps.newHashMapWithExpectedSize(pubKeyHashes.size());
+        for (byte[] pubKeyHash : pubKeyHashes) {
+            balances.putIfAbsent(ByteBuffer.wrap(pubKeyHash), new LongAdder());
         }
-        for (byte[] value : chainstateBucket.values()) {
-            TXOutput[] txOutputs = (TXOutput[]) KryoSerializer.deserialize(value);
-            for (TXOutput txOutput : txOutputs) {
-                if (txOutput.isLockedWithKey(pubKeyHash)) {
-                    utxos = ArrayUtils.add(utxos, txOutput);
-                }
-            }
+        utxoCache.sumBalances(balances, utxoReindexer.getPool());
+        long[] result = new long[pubKeyHashes.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = balances.get(ByteBuffer.wrap(pubKeyHashes.get(i))).sum();
         }
-        return utxos;
+        return result;
     }
 
-    // Rebuild the UTXO pool index
-    @Synchronized
+    // Rebuild the UTXO pool index in a single pass over the chain, cached changes are dropped
     public void reIndex() {
-        log.info("Start to reIndex UTXO set !");
-        rocksDBService.cleanChainStateBucket();
-        Map<String, TXOutput[]> allUTXOs = blockchain.findAllUTXOs();
-        for (Map.Entry<String, TXOutput[]> entry : allUTXOs.entrySet()) {
-            rocksDBService.putUTXOs(entry.getKey(), entry.getValue());
-        }
-        log.info("ReIndex UTXO set finished ! ");
+        utxoReindexer.reindex();
     }
 
     /**
@@ -109,52 +114,16 @@ public class UTXOSet {
      * When a new block is generated, two things need to be done:
      * 1) Remove the spent transaction output from the UTXO pool;
      * 2) Save the new unspent transaction output;
+     * Both happen in the UTXO cache, which writes them to the chainstate bucket on its next flush
      *
      * @param tipBlock latest block
      */
-    @Synchronized
     public void update(Block tipBlock) {
         if (tipBlock == null) {
             log.error("Fail to update UTXO set ! tipBlock is null !");
             throw new RuntimeException("Fail to update UTXO set ! ");
         }
-        for (Transaction transaction : tipBlock.getTransactions()) {
-
-            // Find out the remaining unused transaction outputs based on transaction inputs
-            if (!transaction.isCoinbase()) {
-                for (TXInput txInput : transaction.getInputs()) {
-                    // Remaining unspent transaction outputs
-                    TXOutput[] remainderUTXOs = {};
-                    String txId = Hex.encodeHexString(txInput.getTxId());
-                    TXOutput[] txOutputs = rocksDBService.getUTXOs(txId);
-
-                    if (txOutputs == null) {
-                        continue;
-                    }
-
-                    for (int outIndex = 0; outIndex < txOutputs.length; outIndex++) {
-                        if (outIndex != txInput.getTxOutputIndex()) {
-                            remainderUTXOs = ArrayUtils.add(remainderUTXOs, txOutputs[outIndex]);
-                        }
-                    }
-
-                    // Delete if there is no remaining, otherwise update
-                    if (remainderUTXOs.length == 0) {
-                        rocksDBService.deleteUTXOs(txId);
-                    } else {
-                        rocksDBService.putUTXOs(txId, remainderUTXOs);
-                    }
-                }
-            }
-
-            // The new transaction output is saved to DB
-            TXOutput[] txOutputs = transaction.getOutputs();
-            String txId = Hex.encodeHexString(transaction.getTxId());
-            rocksDBService.putUTXOs(txId, txOutputs);
-        }
-
-
+        utxoCache.connectBlock(tipBlock);
     }
 
-
 }
\ No newline at end of file
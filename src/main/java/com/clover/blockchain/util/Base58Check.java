@@ -1,8 +1,11 @@
 package com.clover.blockchain.util;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AllArgsConstructor;
+
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.math.BigInteger;
 import java.util.Arrays;
 
 /**
@@ -22,25 +25,59 @@ public final class Base58Check {
 
     /**
      * Convert to Base58 string
+     * The number is kept in 32 bit limbs and divided by 58^5 in place, so every division yields five characters
      *
      * @param data
      * @return
      */
     public static String rawBytesToBase58(byte[] data) {
-        // Convert to base-58 string
-        StringBuilder sb = new StringBuilder();
-        BigInteger num = new BigInteger(1, data);
-        while (num. signum() != 0) {
-            BigInteger[] quotrem = num.divideAndRemainder(ALPHABET_SIZE);
-            sb.append(ALPHABET.charAt(quotrem[1].intValue()));
-            num = quotrem[0];
+        // Count leading 0-value bytes, they become leading '1' characters
+        int zeros = 0;
+        while (zeros < data.length && data[zeros] == 0) {
+            zeros++;
+        }
+        int[] limbs = toLimbs(data, zeros);
+        int used = limbs.length;
+        // a base-58 digit carries less than 6 bits, so two characters per byte are always enough
+        char[] encoded = new char[data.length * 2 + CHUNK_DIGITS];
+        int outputStart = encoded.length;
+        while (used > 0) {
+            long remainder = 0;
+            for (int i = used - 1; i >= 0; i--) {
+                long current = (remainder << 32) | (limbs[i] & 0xFFFFFFFFL);
+                limbs[i] = (int) (current / CHUNK_BASE);
+                remainder = current % CHUNK_BASE;
+            }
+            while (used > 0 && limbs[used - 1] == 0) {
+                used--;
+            }
+            for (int k = 0; k < CHUNK_DIGITS; k++) {
+                encoded[--outputStart] = ALPHABET_CHARS[(int) (remainder % 58)];
+                remainder /= 58;
+            }
+        }
+        // Drop the zero digits of the last, partial chunk
+        while (outputStart < encoded.length && encoded[outputStart] == ALPHABET_CHARS[0]) {
+            outputStart++;
         }
+        while (--zeros >= 0) {
+            encoded[--outputStart] = ALPHABET_CHARS[0];
+        }
+        return new String(encoded, outputStart, encoded.length - outputStart);
+    }
 
-        // Add '1' characters for leading 0-value bytes
-        for (int i = 0; i < data.length && data[i] == 0; i++) {
-            sb.append(ALPHABET.charAt(0));
+    // the bytes from offset on as little endian 32 bit limbs, the first byte being the most significant
+    private static int[] toLimbs(byte[] data, int offset) {
+        int[] limbs = new int[(data.length - offset + 3) / 4];
+        for (int i = data.length - 1, shift = 0, limb = 0; i >= offset; i--) {
+            limbs[limb] |= (data[i] & 0xFF) << shift;
+            shift += 8;
+            if (shift == 32) {
+                shift = 0;
+                limb++;
+            }
         }
-        return sb.reverse().toString();
+        return limbs;
     }
 
     /**
@@ -65,61 +102,120 @@ public final class Base58Check {
     /**
      * Convert the Base58Check string to a byte array, and verify its check code
      * The returned byte array has a version number, but does not have a checksum
+     * Decoded strings are cached together with the result of the checksum verification
      *
      * @param s
      * @return
      */
     public static byte[] base58ToBytes(String s) {
+        DecodedAddress decoded = DECODED.getIfPresent(s);
+        if (decoded == null) {
+            decoded = decode(s);
+            DECODED.put(s, decoded);
+        }
+        if (!decoded.checksumValid) {
+            throw new IllegalArgumentException("Checksum mismatch");
+        }
+        return decoded.payload.clone();
+    }
+
+    private static DecodedAddress decode(String s) {
         byte[] concat = base58ToRawBytes(s);
-        byte[] data = Arrays. copyOf(concat, concat. length - 4);
+        if (concat.length < 4) {
+            throw new IllegalArgumentException("Base58Check string too short");
+        }
+        byte[] data = Arrays.copyOf(concat, concat.length - 4);
         byte[] hash = Arrays.copyOfRange(concat, concat.length - 4, concat.length);
         byte[] rehash = Arrays.copyOf(BtcAddressUtils.doubleHash(data), 4);
-        if (!Arrays. equals(rehash, hash)) {
-            throw new IllegalArgumentException("Checksum mismatch");
-        }
-        return data;
+        return new DecodedAddress(data, Arrays.equals(rehash, hash));
     }
 
     /**
      * Reverse Base58Check string to byte array
+     * Five digits at a time are folded into 32 bit limbs by multiplying them with 58^5
      *
      * @param s
      * @return
      */
-    static byte[] base58ToRawBytes(String s) {
-        // Parse base-58 string
-        BigInteger num = BigInteger. ZERO;
-        for (int i = 0; i < s. length(); i++) {
-            num = num.multiply(ALPHABET_SIZE);
-            int digit = ALPHABET. indexOf(s. charAt(i));
-            if (digit == -1) {
-                throw new IllegalArgumentException("Invalid character for Base58Check");
+    public static byte[] base58ToRawBytes(String s) {
+        // Convert leading '1' characters to leading 0-value bytes
+        int zeros = 0;
+        while (zeros < s.length() && s.charAt(zeros) == ALPHABET_CHARS[0]) {
+            zeros++;
+        }
+        // a base-58 digit carries less than 6 bits, so a limb per four characters is always enough
+        int[] limbs = new int[(s.length() - zeros) / 4 + 1];
+        int used = 0;
+        for (int i = zeros; i < s.length(); ) {
+            // Parse the next chunk of up to five base-58 digits
+            long chunk = 0;
+            long multiplier = 1;
+            for (int end = Math.min(i + CHUNK_DIGITS, s.length()); i < end; i++) {
+                char c = s.charAt(i);
+                int digit = c < INDEXES.length ? INDEXES[c] : -1;
+                if (digit == -1) {
+                    throw new IllegalArgumentException("Invalid character for Base58Check");
+                }
+                chunk = chunk * 58 + digit;
+                multiplier *= 58;
+            }
+            long carry = chunk;
+            for (int j = 0; j < used; j++) {
+                long current = (limbs[j] & 0xFFFFFFFFL) * multiplier + carry;
+                limbs[j] = (int) current;
+                carry = current >>> 32;
+            }
+            if (carry != 0) {
+                limbs[used++] = (int) carry;
             }
-            num = num. add(BigInteger. valueOf(digit));
         }
-        // Strip possible leading zero due to mandatory sign bit
-        byte[] b = num.toByteArray();
-        if (b[0] == 0) {
-            b = Arrays. copyOfRange(b, 1, b. length);
+        // Write the limbs out big endian, without the zero bytes of the most significant limb
+        int significantBytes = used * 4;
+        while (significantBytes > 0 && limbByte(limbs, significantBytes - 1) == 0) {
+            significantBytes--;
         }
-        try {
-            // Convert leading '1' characters to leading 0-value bytes
-            ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            for (int i = 0; i < s. length() && s. charAt(i) == ALPHABET. charAt(0); i++) {
-                buf.write(0);
-            }
-            buf. write(b);
-            return buf.toByteArray();
-        } catch (IOException e) {
-            throw new AssertionError(e);
+        byte[] decoded = new byte[zeros + significantBytes];
+        for (int i = 0; i < significantBytes; i++) {
+            decoded[decoded.length - 1 - i] = limbByte(limbs, i);
         }
+        return decoded;
+    }
+
+    // the byte at the index of the little endian number
+    private static byte limbByte(int[] limbs, int index) {
+        return (byte) (limbs[index / 4] >>> (8 * (index % 4)));
     }
 
 
     /*---- Class constants ----*/
 
     private static final String ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
-    private static final BigInteger ALPHABET_SIZE = BigInteger. valueOf(ALPHABET. length());
+    private static final char[] ALPHABET_CHARS = ALPHABET.toCharArray();
+    // 58^5 is the largest power of 58 below 2^32, the codec converts five digits per step
+    private static final int CHUNK_DIGITS = 5;
+    private static final long CHUNK_BASE = 58L * 58 * 58 * 58 * 58;
+    // character -> base-58 digit, -1 for characters outside the alphabet
+    private static final int[] INDEXES = new int[128];
+
+    static {
+        Arrays.fill(INDEXES, -1);
+        for (int i = 0; i < ALPHABET_CHARS.length; i++) {
+            INDEXES[ALPHABET_CHARS[i]] = i;
+        }
+    }
+
+    // decoded addresses kept at most
+    private static final int DECODED_CACHE_SIZE = 10_000;
+    private static final Cache<String, DecodedAddress> DECODED = CacheBuilder.newBuilder()
+            .maximumSize(DECODED_CACHE_SIZE)
+            .build();
+
+    // versioned payload of a decoded string and whether its check code matched
+    @AllArgsConstructor
+    private static class DecodedAddress {
+        private final byte[] payload;
+        private final boolean checksumValid;
+    }
 
 
     /*---- Miscellaneous ----*/
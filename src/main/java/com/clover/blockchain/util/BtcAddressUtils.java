@@ -1,8 +1,6 @@
 package com.clover.blockchain.util;
 
-import org.apache.commons.codec.digest.DigestUtils;
-import org.bouncycastle.crypto.digests.RIPEMD160Digest;
-import org.bouncycastle.util.Arrays;
+import java.util.Arrays;
 
 public class BtcAddressUtils {
     /**
@@ -12,7 +10,7 @@ public class BtcAddressUtils {
      * @return
      */
     public static byte[] doubleHash(byte[] data) {
-        return DigestUtils.sha256(DigestUtils.sha256(data));
+        return HashUtils.doubleSha256(data);
     }
 
     /**
@@ -22,13 +20,7 @@ public class BtcAddressUtils {
      * @return ipeMD160Hash(sha256 ( pubkey))
      */
     public static byte[] ripeMD160Hash(byte[] pubKey) {
-        //1. First do sha256 processing on the public key
-        byte[] shaHashedKey = DigestUtils.sha256(pubKey);
-        RIPEMD160Digest ripemd160 = new RIPEMD160Digest();
-        ripemd160.update(shaHashedKey, 0, shaHashedKey.length);
-        byte[] output = new byte[ripemd160.getDigestSize()];
-        ripemd160.doFinal(output, 0);
-        return output;
+        return HashUtils.hash160(pubKey);
     }
 
     /**
@@ -38,6 +30,6 @@ public class BtcAddressUtils {
      * @return
      */
     public static byte[] checksum(byte[] payload) {
-        return Arrays.copyOfRange(doubleHash(payload), 0, 4);
+        return Arrays.copyOf(doubleHash(payload), 4);
     }
 }
@@ -0,0 +1,116 @@
+package com.clover.blockchain.util;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.jce.spec.ECParameterSpec;
+import org.bouncycastle.jce.spec.ECPublicKeySpec;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Security;
+import java.security.Signature;
+import java.security.spec.InvalidKeySpecException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * ECDSA over secp256k1, shared by wallets and transactions.
+ * The BC provider is registered and the curve parameters are looked up once; every thread keeps its own
+ * Signature, KeyFactory and KeyPairGenerator, and decoded public keys are cached by their encoding.
+ */
+public class CryptoUtils {
+
+    public static final String CURVE_NAME = "secp256k1";
+
+    // 0x04 followed by the 32 byte x and y coordinates
+    public static final int PUBLIC_KEY_LENGTH = 65;
+
+    // decoded public keys kept at most, an entry costs well under 1 KiB
+    private static final int PUBLIC_KEY_CACHE_SIZE = 10_000;
+
+    public static final ECParameterSpec CURVE;
+
+    static {
+        if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+            Security.addProvider(new BouncyCastleProvider());
+        }
+        CURVE = ECNamedCurveTable.getParameterSpec(CURVE_NAME);
+    }
+
+    private static final ThreadLocal<Signature> SIGNATURE = ThreadLocal.withInitial(() -> {
+        try {
+            return Signature.getInstance("SHA256withECDSA", BouncyCastleProvider.PROVIDER_NAME);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Fail to get SHA256withECDSA signature ! ", e);
+        }
+    });
+
+    private static final ThreadLocal<KeyFactory> KEY_FACTORY = ThreadLocal.withInitial(() -> {
+        try {
+            return KeyFactory.getInstance("ECDSA", BouncyCastleProvider.PROVIDER_NAME);
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Fail to get ECDSA key factory ! ", e);
+        }
+    });
+
+    private static final ThreadLocal<KeyPairGenerator> KEY_PAIR_GENERATOR = ThreadLocal.withInitial(() -> {
+        try {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("ECDSA", BouncyCastleProvider.PROVIDER_NAME);
+            keyPairGenerator.initialize(CURVE, new SecureRandom());
+            return keyPairGenerator;
+        } catch (GeneralSecurityException e) {
+            throw new RuntimeException("Fail to get ECDSA key pair generator ! ", e);
+        }
+    });
+
+    // keyed by a copy of the 65 byte uncompressed encoding, ByteBuffer compares the content
+    private static final Cache<ByteBuffer, PublicKey> PUBLIC_KEYS = CacheBuilder.newBuilder()
+            .maximumSize(PUBLIC_KEY_CACHE_SIZE)
+            .build();
+
+    // new secp256k1 key pair
+    public static KeyPair newKeyPair() {
+        return KEY_PAIR_GENERATOR.get().generateKeyPair();
+    }
+
+    // sign the data with SHA256withECDSA
+    public static byte[] sign(PrivateKey privateKey, byte[] data) throws GeneralSecurityException {
+        Signature signature = SIGNATURE.get();
+        signature.initSign(privateKey);
+        signature.update(data);
+        return signature.sign();
+    }
+
+    // check the SHA256withECDSA signature of the data against the encoded public key
+    public static boolean verify(byte[] pubKey, byte[] data, byte[] sig) throws GeneralSecurityException {
+        Signature signature = SIGNATURE.get();
+        signature.initVerify(publicKey(pubKey));
+        signature.update(data);
+        return signature.verify(sig);
+    }
+
+    // public key from its uncompressed encoding: 0x04 followed by the x and y coordinates
+    // compressed and other encodings decodePoint would accept are rejected, as they always were
+    public static PublicKey publicKey(byte[] pubKey) throws GeneralSecurityException {
+        if (pubKey == null || pubKey.length != PUBLIC_KEY_LENGTH || pubKey[0] != 0x04) {
+            throw new InvalidKeySpecException("ERROR: public key must be " + PUBLIC_KEY_LENGTH
+                    + " bytes uncompressed ! length=" + (pubKey == null ? null : pubKey.length));
+        }
+        try {
+            return PUBLIC_KEYS.get(ByteBuffer.wrap(pubKey.clone()), () -> KEY_FACTORY.get()
+                    .generatePublic(new ECPublicKeySpec(CURVE.getCurve().decodePoint(pubKey), CURVE)));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) e.getCause();
+            }
+            throw new RuntimeException("Fail to decode public key ! ", e.getCause());
+        }
+    }
+}
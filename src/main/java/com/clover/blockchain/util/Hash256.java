@@ -0,0 +1,94 @@
+package com.clover.blockchain.util;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.util.Arrays;
+
+/**
+ * Immutable 32 byte hash of a block or a transaction.
+ * Used as the key of in-memory maps and, as its raw bytes, of the RocksDB indexes;
+ * the hex form is only produced for JSON and logs.
+ */
+public final class Hash256 implements Comparable<Hash256> {
+
+    public static final int LENGTH = HashUtils.SHA256_LENGTH;
+
+    // previous block hash of the genesis block
+    public static final Hash256 ZERO = new Hash256(new byte[LENGTH]);
+
+    private final byte[] bytes;
+
+    // computed once, the hash is looked up far more often than it is created
+    private final int hashCode;
+
+    private Hash256(byte[] bytes) {
+        this.bytes = bytes;
+        this.hashCode = Arrays.hashCode(bytes);
+    }
+
+    // the array has to hold exactly the 32 bytes of the hash
+    public static Hash256 of(byte[] bytes) {
+        if (bytes == null || bytes.length != LENGTH) {
+            throw new IllegalArgumentException("ERROR: hash must be " + LENGTH + " bytes ! length="
+                    + (bytes == null ? null : bytes.length));
+        }
+        return new Hash256(bytes.clone());
+    }
+
+    // hash stored at offset of a larger array, only for slicing database keys
+    public static Hash256 of(byte[] bytes, int offset) {
+        if (bytes == null || offset < 0 || bytes.length - offset < LENGTH) {
+            throw new IllegalArgumentException("ERROR: hash must be " + LENGTH + " bytes ! ");
+        }
+        return new Hash256(Arrays.copyOfRange(bytes, offset, offset + LENGTH));
+    }
+
+    @JsonCreator
+    public static Hash256 fromHex(String hex) {
+        try {
+            return of(Hex.decodeHex(hex));
+        } catch (DecoderException e) {
+            throw new IllegalArgumentException("ERROR: invalid hash ! hash=" + hex, e);
+        }
+    }
+
+    // copy of the raw bytes
+    public byte[] getBytes() {
+        return bytes.clone();
+    }
+
+    public void copyTo(byte[] dest, int offset) {
+        System.arraycopy(bytes, 0, dest, offset, LENGTH);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Hash256)) {
+            return false;
+        }
+        Hash256 other = (Hash256) o;
+        return hashCode == other.hashCode && Arrays.equals(bytes, other.bytes);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public int compareTo(Hash256 other) {
+        return Arrays.compareUnsigned(bytes, other.bytes);
+    }
+
+    @JsonValue
+    @Override
+    public String toString() {
+        return Hex.encodeHexString(bytes);
+    }
+}
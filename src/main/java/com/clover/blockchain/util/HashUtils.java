@@ -0,0 +1,147 @@
+package com.clover.blockchain.util;
+
+import org.bouncycastle.crypto.digests.RIPEMD160Digest;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashing shared by proof of work, merkle trees, transactions and addresses.
+ * Every thread keeps its own SHA-256 and RIPEMD-160 digests, data is fed to them straight from the callers' arrays
+ * and results can be written into the callers' buffers, so hashing allocates nothing but the returned arrays.
+ */
+public final class HashUtils {
+
+    public static final int SHA256_LENGTH = 32;
+
+    public static final int RIPEMD160_LENGTH = 20;
+
+    // used by the one-shot helpers
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(HashUtils::newSha256Digest);
+
+    private static final ThreadLocal<RIPEMD160Digest> RIPEMD160 = ThreadLocal.withInitial(RIPEMD160Digest::new);
+
+    // intermediate hash of the double and chained hashes
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SHA256_LENGTH]);
+
+    // has its own digest, so the one-shot helpers can be used while a builder is being fed
+    private static final ThreadLocal<Sha256Builder> BUILDER = ThreadLocal.withInitial(Sha256Builder::new);
+
+    /**
+     * SHA-256 builder of the current thread, reset and ready to be fed.
+     * It must be finished with digest or digestInto before the thread asks for it again.
+     */
+    public static Sha256Builder sha256() {
+        Sha256Builder builder = BUILDER.get();
+        builder.digest.reset();
+        return builder;
+    }
+
+    public static byte[] sha256(byte[] data) {
+        byte[] hash = new byte[SHA256_LENGTH];
+        sha256(data, 0, data.length, hash, 0);
+        return hash;
+    }
+
+    // SHA-256 of the range written into out at outOffset
+    public static void sha256(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        MessageDigest digest = SHA256.get();
+        digest.update(data, offset, length);
+        digestInto(digest, out, outOffset);
+    }
+
+    public static byte[] doubleSha256(byte[] data) {
+        byte[] hash = new byte[SHA256_LENGTH];
+        doubleSha256(data, 0, data.length, hash, 0);
+        return hash;
+    }
+
+    // SHA-256 of the SHA-256 of the range written into out at outOffset
+    public static void doubleSha256(byte[] data, int offset, int length, byte[] out, int outOffset) {
+        byte[] scratch = SCRATCH.get();
+        sha256(data, offset, length, scratch, 0);
+        sha256(scratch, 0, SHA256_LENGTH, out, outOffset);
+    }
+
+    // RIPEMD-160 of the SHA-256 of the data, the public key hash of addresses
+    public static byte[] hash160(byte[] data) {
+        byte[] hash = new byte[RIPEMD160_LENGTH];
+        hash160(data, hash, 0);
+        return hash;
+    }
+
+    public static void hash160(byte[] data, byte[] out, int outOffset) {
+        byte[] scratch = SCRATCH.get();
+        sha256(data, 0, data.length, scratch, 0);
+        RIPEMD160Digest ripemd160 = RIPEMD160.get();
+        ripemd160.update(scratch, 0, SHA256_LENGTH);
+        ripemd160.doFinal(out, outOffset);
+    }
+
+    private static void digestInto(MessageDigest digest, byte[] out, int outOffset) {
+        try {
+            digest.digest(out, outOffset, SHA256_LENGTH);
+        } catch (DigestException e) {
+            throw new RuntimeException("Fail to compute SHA-256 ! ", e);
+        }
+    }
+
+    private static MessageDigest newSha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Fail to get SHA-256 digest ! ", e);
+        }
+    }
+
+    // feeds byte ranges and big endian numbers straight into a SHA-256 digest
+    public static final class Sha256Builder {
+
+        private final MessageDigest digest = newSha256Digest();
+
+        private final byte[] numberBuffer = new byte[Long.BYTES];
+
+        private Sha256Builder() {
+        }
+
+        public Sha256Builder update(byte[] data) {
+            digest.update(data);
+            return this;
+        }
+
+        public Sha256Builder update(byte[] data, int offset, int length) {
+            digest.update(data, offset, length);
+            return this;
+        }
+
+        public Sha256Builder putInt(int value) {
+            for (int i = Integer.BYTES - 1; i >= 0; i--) {
+                numberBuffer[i] = (byte) value;
+                value >>>= 8;
+            }
+            digest.update(numberBuffer, 0, Integer.BYTES);
+            return this;
+        }
+
+        public Sha256Builder putLong(long value) {
+            for (int i = Long.BYTES - 1; i >= 0; i--) {
+                numberBuffer[i] = (byte) value;
+                value >>>= 8;
+            }
+            digest.update(numberBuffer, 0, Long.BYTES);
+            return this;
+        }
+
+        public byte[] digest() {
+            return digest.digest();
+        }
+
+        public void digestInto(byte[] out, int outOffset) {
+            HashUtils.digestInto(digest, out, outOffset);
+        }
+    }
+
+    private HashUtils() {
+    }
+}
@@ -2,6 +2,7 @@ package com.clover.blockchain.wallet;
 
 import com.clover.blockchain.util.Base58Check;
 import com.clover.blockchain.util.BtcAddressUtils;
+import com.clover.blockchain.util.CryptoUtils;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
@@ -9,17 +10,11 @@ import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPrivateKey;
 import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPublicKey;
-import org.bouncycastle.jce.ECNamedCurveTable;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.jce.spec.ECParameterSpec;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
-import java.security.SecureRandom;
-import java.security.Security;
 
 @Data
 @AllArgsConstructor
@@ -72,14 +67,8 @@ public class Wallet implements Serializable {
      * @throws Exception
      */
     private KeyPair newECKeyPair() throws Exception {
-        // Register BC Provider
-        Security. addProvider(new BouncyCastleProvider());
-        // Create a key pair generator for the elliptic curve algorithm, the algorithm is ECDSA
-        KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("ECDSA", BouncyCastleProvider.PROVIDER_NAME);
-        // elliptic curve (EC) domain parameter setting
-        ECParameterSpec ecSpec = ECNamedCurveTable. getParameterSpec("secp256k1");
-        keyPairGenerator.initialize(ecSpec, new SecureRandom());
-        return keyPairGenerator. generateKeyPair();
+        // secp256k1 key pair from the thread's generator, the BC provider is registered once by CryptoUtils
+        return CryptoUtils.newKeyPair();
     }
 
 
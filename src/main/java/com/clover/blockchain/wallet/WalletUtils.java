@@ -10,20 +10,37 @@ import lombok.extern.slf4j.Slf4j;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.SealedObject;
 import javax.crypto.spec.SecretKeySpec;
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Wallet keystore.
+ * All wallets are loaded into memory once and read concurrently from there.
+ * On disk they live in an append-only log of encrypted records: a new wallet appends one record, and once enough
+ * records have accumulated the log is compacted into a single snapshot record.
+ * A wallet.dat written by earlier versions is imported into the log on first start and kept as wallet.dat.imported.
+ */
 @Slf4j
 public class WalletUtils {
     /**
@@ -35,21 +52,27 @@ public class WalletUtils {
         if (instance == null) {
             synchronized (WalletUtils.class) {
                 if (instance == null) {
-                    instance = new WalletUtils();
+                    instance = new WalletUtils(Path.of(""));
                 }
             }
         }
         return instance;
     }
 
-    private WalletUtils() {
+    // wallet files are kept in the directory, the working directory for the shared instance
+    WalletUtils(Path directory) {
+        this.directory = directory;
         initWalletFile();
     }
 
     /**
-     * wallet file
+     * legacy wallet file, the whole map of wallets sealed at once
      */
     private final static String WALLET_FILE = "wallet.dat";
+    /**
+     * wallet log, one encrypted record per wallet or snapshot
+     */
+    private final static String WALLET_LOG_FILE = "wallet.log";
     /**
      * Encryption Algorithm
      */
@@ -58,17 +81,39 @@ public class WalletUtils {
      * ciphertext
      */
     private static final byte[] CIPHER_TEXT = "2oF@5sC%DNf32y!TmiZi!tG9W5rLaniD".getBytes();
+    /**
+     * records appended since the last snapshot that trigger a compaction
+     */
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    private final Path directory;
+
+    // address -> wallet
+    private final Map<String, Wallet> walletMap = new ConcurrentHashMap<>();
+
+    // records in the log after its leading snapshot
+    private int appendedRecords;
 
     /**
      * Initialize the wallet file
      */
     private void initWalletFile() {
-        File file = new File(WALLET_FILE);
-        if (!file.exists()) {
-            this.saveToDisk(new Wallets());
-        } else {
-            this.loadFromDisk();
+        this.loadLog();
+        File legacyFile = directory.resolve(WALLET_FILE).toFile();
+        if (legacyFile.exists()) {
+            Wallets legacyWallets = this.loadLegacyFile();
+            walletMap.putAll(legacyWallets.getWalletMap());
+            // the snapshot holds every wallet before the legacy file is moved away
+            this.compact();
+            try {
+                Files.move(legacyFile.toPath(), directory.resolve(WALLET_FILE + ".imported"), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                log.error("Fail to move legacy wallet file ! ", e);
+                throw new RuntimeException("Fail to move legacy wallet file ! ", e);
+            }
+            log.info("Imported legacy wallet file ! wallets=" + legacyWallets.getWalletMap().size());
         }
+        log.info("Wallets loaded ! wallets=" + walletMap.size());
     }
 
     /**
@@ -77,8 +122,7 @@ public class WalletUtils {
      * @return
      */
     public Set<String> getAddresses() {
-        Wallets wallets = this.loadFromDisk();
-        return wallets.getAddresses();
+        return Collections.unmodifiableSet(walletMap.keySet());
     }
 
     /**
@@ -88,33 +132,137 @@ public class WalletUtils {
      * @return
      */
     public Wallet getWallet(String address) {
-        Wallets wallets = this.loadFromDisk();
-        return wallets.getWallet(address);
+        // Check if the wallet address is valid
+        try {
+            Base58Check.base58ToBytes(address);
+        } catch (Exception e) {
+            log.error("Fail to get wallet ! address invalid ! address=" + address, e);
+            throw new RuntimeException("Fail to get wallet ! ");
+        }
+        Wallet wallet = walletMap.get(address);
+        if (wallet == null) {
+            log.error("Fail to get wallet ! wallet don`t exist ! address=" + address);
+            throw new RuntimeException("Fail to get wallet ! ");
+        }
+        return wallet;
     }
 
     /**
-     * create wallet
+     * create wallet, only the new wallet is written to disk
      *
      * @return
      */
     public Wallet createWallet() {
         Wallet wallet = new Wallet();
-        Wallets wallets = this.loadFromDisk();
-        wallets.addWallet(wallet);
-        this.saveToDisk(wallets);
+        synchronized (this) {
+            this.appendRecord(wallet);
+            walletMap.put(wallet.getAddress(), wallet);
+            if (++appendedRecords >= COMPACT_THRESHOLD) {
+                this.compact();
+            }
+        }
         return wallet;
     }
 
+    // records in the log after its leading snapshot
+    int getAppendedRecords() {
+        return appendedRecords;
+    }
+
     /**
-     * Load wallet data
+     * Rewrite the log as a single snapshot record of all wallets, swapped in atomically
      */
-    private Wallets loadFromDisk() {
+    public synchronized void compact() {
+        Path logFile = directory.resolve(WALLET_LOG_FILE);
+        Path tmpFile = directory.resolve(WALLET_LOG_FILE + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmpFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeRecord(channel, new Wallets(Maps.newHashMap(walletMap)));
+                channel.force(true);
+            }
+            Files.move(tmpFile, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            appendedRecords = 0;
+            log.info("Compacted wallet log ! wallets=" + walletMap.size());
+        } catch (IOException e) {
+            log.error("Fail to compact wallet log ! ", e);
+            throw new RuntimeException("Fail to compact wallet log ! ", e);
+        }
+    }
+
+    /**
+     * Load wallet data from the log, a record cut short by a crash is dropped from the end of the file
+     */
+    private void loadLog() {
+        Path logFile = directory.resolve(WALLET_LOG_FILE);
+        if (!Files.exists(logFile)) {
+            return;
+        }
+        long validLength = 0;
+        try (DataInputStream inputStream = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile)))) {
+            long fileLength = Files.size(logFile);
+            while (true) {
+                byte[] record;
+                try {
+                    int recordLength = inputStream.readInt();
+                    if (recordLength < 0 || recordLength > fileLength - validLength - Integer.BYTES) {
+                        break;
+                    }
+                    record = new byte[recordLength];
+                    inputStream.readFully(record);
+                } catch (EOFException e) {
+                    break;
+                }
+                Object value = decrypt(record);
+                if (value instanceof Wallets) {
+                    walletMap.putAll(((Wallets) value).getWalletMap());
+                    appendedRecords = 0;
+                } else {
+                    Wallet wallet = (Wallet) value;
+                    walletMap.put(wallet.getAddress(), wallet);
+                    appendedRecords++;
+                }
+                validLength += Integer.BYTES + record.length;
+            }
+        } catch (Exception e) {
+            log.error("Fail to load wallet log ! ", e);
+            throw new RuntimeException("Fail to load wallet log ! ", e);
+        }
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            if (channel.size() > validLength) {
+                log.warn("Dropping incomplete record at the end of the wallet log ! bytes=" + (channel.size() - validLength));
+                channel.truncate(validLength);
+            }
+        } catch (IOException e) {
+            log.error("Fail to truncate wallet log ! ", e);
+            throw new RuntimeException("Fail to truncate wallet log ! ", e);
+        }
+    }
+
+    /**
+     * Append one record to the log and sync it
+     */
+    private void appendRecord(Serializable value) {
+        try (FileChannel channel = FileChannel.open(directory.resolve(WALLET_LOG_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            writeRecord(channel, value);
+            channel.force(false);
+        } catch (IOException e) {
+            log.error("Fail to save wallet to disk !", e);
+            throw new RuntimeException("Fail to save wallet to disk!", e);
+        }
+    }
+
+    /**
+     * Load the legacy wallet file, the whole map of wallets in one sealed object
+     */
+    private Wallets loadLegacyFile() {
         try {
             SecretKeySpec sks = new SecretKeySpec(CIPHER_TEXT, ALGORITHM);
             Cipher cipher = Cipher.getInstance(ALGORITHM);
             cipher.init(Cipher.DECRYPT_MODE, sks);
             @Cleanup CipherInputStream cipherInputStream = new CipherInputStream(
-                    new BufferedInputStream(new FileInputStream(WALLET_FILE)), cipher);
+                    new BufferedInputStream(new FileInputStream(directory.resolve(WALLET_FILE).toFile())), cipher);
             @Cleanup ObjectInputStream inputStream = new ObjectInputStream(cipherInputStream);
             SealedObject sealedObject = (SealedObject) inputStream.readObject();
             return (Wallets) sealedObject.getObject(cipher);
@@ -124,33 +272,41 @@ public class WalletUtils {
         }
     }
 
-    /**
-     * Save wallet data
-     */
-    private void saveToDisk(Wallets wallets) {
+    // record layout: 4 byte length followed by the encrypted, serialized value
+    private static void writeRecord(FileChannel channel, Serializable value) throws IOException {
+        byte[] record = encrypt(value);
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + record.length);
+        buffer.putInt(record.length).put(record).flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static byte[] encrypt(Serializable value) {
         try {
-            if (wallets == null) {
-                log.error("Fail to save wallet to file ! wallets is null ");
-                throw new Exception("ERROR: Fail to save wallet to file!");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream outputStream = new ObjectOutputStream(bytes)) {
+                outputStream.writeObject(value);
             }
-            SecretKeySpec sks = new SecretKeySpec(CIPHER_TEXT, ALGORITHM);
-            //Create cipher
             Cipher cipher = Cipher.getInstance(ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, sks);
-            SealedObject sealedObject = new SealedObject(wallets, cipher);
-            // Wrap the output stream
-            @Cleanup CipherOutputStream cos = new CipherOutputStream(
-                    new BufferedOutputStream(new FileOutputStream(WALLET_FILE)), cipher);
-            @Cleanup ObjectOutputStream outputStream = new ObjectOutputStream(cos);
-            outputStream.writeObject(sealedObject);
+            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(CIPHER_TEXT, ALGORITHM));
+            return cipher.doFinal(bytes.toByteArray());
         } catch (Exception e) {
-            log.error("Fail to save wallet to disk !", e);
-            throw new RuntimeException("Fail to save wallet to disk!");
+            log.error("Fail to encrypt wallet record ! ", e);
+            throw new RuntimeException("Fail to encrypt wallet record ! ", e);
+        }
+    }
+
+    private static Object decrypt(byte[] record) throws Exception {
+        Cipher cipher = Cipher.getInstance(ALGORITHM);
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(CIPHER_TEXT, ALGORITHM));
+        try (ObjectInputStream inputStream = new ObjectInputStream(new ByteArrayInputStream(cipher.doFinal(record)))) {
+            return inputStream.readObject();
         }
     }
 
     /**
-     * wallet storage object
+     * wallet storage object, the content of the legacy wallet file and of snapshot records
      */
     @Data
     @NoArgsConstructor
@@ -160,54 +316,5 @@ public class WalletUtils {
         private static final long serialVersionUID = -2542070981569243131L;
 
         private Map<String, Wallet> walletMap = Maps.newHashMap();
-
-        /**
-         * Add wallet
-         *
-         * @param wallet
-         */
-        private void addWallet(Wallet wallet) {
-            try {
-                this.walletMap.put(wallet.getAddress(), wallet);
-            } catch (Exception e) {
-                log.error("Fail to add wallet ! ", e);
-                throw new RuntimeException("Fail to add wallet!");
-            }
-        }
-
-        /**
-         * Get all wallet addresses
-         *
-         * @return
-         */
-        Set<String> getAddresses() {
-            if (walletMap == null) {
-                log.error("Fail to get address ! walletMap is null ! ");
-                throw new RuntimeException("Fail to get addresses ! ");
-            }
-            return walletMap.keySet();
-        }
-
-        /**
-         * Get wallet data
-         *
-         * @param address wallet address
-         * @return
-         */
-        Wallet getWallet(String address) {
-            // Check if the wallet address is valid
-            try {
-                Base58Check.base58ToBytes(address);
-            } catch (Exception e) {
-                log.error("Fail to get wallet ! address invalid ! address=" + address, e);
-                throw new RuntimeException("Fail to get wallet ! ");
-            }
-            Wallet wallet = walletMap.get(address);
-            if (wallet == null) {
-                log.error("Fail to get wallet ! wallet don`t exist ! address=" + address);
-                throw new RuntimeException("Fail to get wallet ! ");
-            }
-            return wallet;
-        }
     }
 }
@@ -122,7 +122,6 @@ class ApplicationTests {
         // award
         Transaction rewardTx = Transaction.newCoinbaseTX(from_address, "");
         Block newBlock = blockchain.mineBlock(new Transaction[]{transaction, rewardTx});
-        new UTXOSet().blockchain(blockchain).update(newBlock);
         log.info("Success!");
     }
 
@@ -0,0 +1,80 @@
+package com.clover.blockchain.benchmark;
+
+import com.clover.blockchain.util.Base58Check;
+import com.clover.blockchain.util.LegacyBase58Check;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding and decoding of a 25 byte address, byte array codec and address cache against the former BigInteger codec.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Base58Benchmark {
+
+    private byte[] binaryAddress;
+
+    private String address;
+
+    @Setup
+    public void setup() {
+        byte[] payload = new byte[21];
+        new Random(42).nextBytes(payload);
+        payload[0] = 0;
+        address = Base58Check.bytesToBase58(payload);
+        binaryAddress = Base58Check.base58ToRawBytes(address);
+    }
+
+    @Benchmark
+    public String encode() {
+        return Base58Check.rawBytesToBase58(binaryAddress);
+    }
+
+    @Benchmark
+    public String legacyEncode() {
+        return LegacyBase58Check.rawBytesToBase58(binaryAddress);
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return Base58Check.base58ToRawBytes(address);
+    }
+
+    @Benchmark
+    public byte[] legacyDecode() {
+        return LegacyBase58Check.base58ToRawBytes(address);
+    }
+
+    // decode and verify the check code, served from the address cache after the first call
+    @Benchmark
+    public byte[] decodeChecked() {
+        return Base58Check.base58ToBytes(address);
+    }
+
+    @Benchmark
+    public byte[] legacyDecodeChecked() {
+        return LegacyBase58Check.base58ToBytes(address);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(Base58Benchmark.class.getSimpleName()).build()).run();
+    }
+}
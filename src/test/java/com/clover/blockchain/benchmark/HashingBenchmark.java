@@ -0,0 +1,117 @@
+package com.clover.blockchain.benchmark;
+
+import com.clover.blockchain.util.ByteUtils;
+import com.clover.blockchain.util.HashUtils;
+import com.clover.blockchain.util.LegacyByteUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.bouncycastle.crypto.digests.RIPEMD160Digest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashes on the hot paths, HashUtils against the former merge and DigestUtils based code.
+ * Run with -prof gc to compare the allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HashingBenchmark {
+
+    private byte[] left;
+
+    private byte[] right;
+
+    private byte[] publicKey;
+
+    private final long timeStamp = 1_700_000_000L;
+
+    private final long nonce = 123_456_789L;
+
+    private final byte[] out = new byte[HashUtils.SHA256_LENGTH];
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        left = new byte[32];
+        right = new byte[32];
+        publicKey = new byte[65];
+        random.nextBytes(left);
+        random.nextBytes(right);
+        random.nextBytes(publicKey);
+    }
+
+    // merkle node: hash of two child hashes
+    @Benchmark
+    public byte[] merkleNode() {
+        HashUtils.sha256().update(left).update(right).digestInto(out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] legacyMerkleNode() {
+        return DigestUtils.sha256(LegacyByteUtils.merge(left, right));
+    }
+
+    // proof of work data: previous hash, merkle root, timestamp, target bits and nonce
+    @Benchmark
+    public byte[] headerHash() {
+        HashUtils.sha256().update(left).update(right).putLong(timeStamp).putLong(16).putLong(nonce).digestInto(out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] legacyHeaderHash() {
+        return DigestUtils.sha256(LegacyByteUtils.merge(left, right, ByteUtils.toBytes(timeStamp), ByteUtils.toBytes(16),
+                ByteUtils.toBytes(nonce)));
+    }
+
+    // address checksum
+    @Benchmark
+    public byte[] doubleSha256() {
+        HashUtils.doubleSha256(publicKey, 0, publicKey.length, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] legacyDoubleSha256() {
+        return DigestUtils.sha256(DigestUtils.sha256(publicKey));
+    }
+
+    // public key hash
+    @Benchmark
+    public byte[] hash160() {
+        HashUtils.hash160(publicKey, out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] legacyHash160() {
+        byte[] shaHashedKey = DigestUtils.sha256(publicKey);
+        RIPEMD160Digest ripemd160 = new RIPEMD160Digest();
+        ripemd160.update(shaHashedKey, 0, shaHashedKey.length);
+        byte[] output = new byte[ripemd160.getDigestSize()];
+        ripemd160.doFinal(output, 0);
+        return output;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(HashingBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+    }
+}
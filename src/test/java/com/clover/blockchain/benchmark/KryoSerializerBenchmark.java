@@ -0,0 +1,106 @@
+package com.clover.blockchain.benchmark;
+
+import com.clover.blockchain.Application;
+import com.clover.blockchain.block.Block;
+import com.clover.blockchain.kryo.KryoSerializer;
+import com.clover.blockchain.transaction.TXInput;
+import com.clover.blockchain.transaction.TXOutput;
+import com.clover.blockchain.transaction.Transaction;
+import com.clover.blockchain.util.Hash256;
+import com.esotericsoftware.kryo.kryo5.Kryo;
+import com.esotericsoftware.kryo.kryo5.io.Input;
+import com.esotericsoftware.kryo.kryo5.io.Output;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention benchmark of the pooled KryoSerializer against the former single static Kryo instance.
+ * The former implementation is not thread-safe, so its baseline serializes calls on the shared instance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class KryoSerializerBenchmark {
+
+    private Block block;
+
+    private Kryo sharedKryo;
+
+    @Setup
+    public void setup() {
+        Application application = new Application();
+        new KryoSerializer(application::kryo);
+        sharedKryo = application.kryo();
+        block = sampleBlock(20);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadBuffer {
+        byte[] buffer = new byte[64 * 1024];
+    }
+
+    @Benchmark
+    public Object pooledRoundTrip() {
+        return KryoSerializer.deserialize(KryoSerializer.serialize(block));
+    }
+
+    @Benchmark
+    public Object pooledIntoCallerBuffer(ThreadBuffer threadBuffer) {
+        int length = KryoSerializer.serialize(block, threadBuffer.buffer, 0);
+        return KryoSerializer.deserialize(threadBuffer.buffer, 0, length);
+    }
+
+    @Benchmark
+    public Object sharedInstanceRoundTrip() {
+        synchronized (sharedKryo) {
+            Output output = new Output(4096, -1);
+            sharedKryo.writeClassAndObject(output, block);
+            byte[] bytes = output.toBytes();
+            output.close();
+            Input input = new Input(bytes);
+            Object obj = sharedKryo.readClassAndObject(input);
+            input.close();
+            return obj;
+        }
+    }
+
+    static Block sampleBlock(int transactionCount) {
+        Random random = new Random(42);
+        Transaction[] transactions = new Transaction[transactionCount];
+        for (int i = 0; i < transactionCount; i++) {
+            TXInput[] inputs = {new TXInput(randomBytes(random, 32), i, randomBytes(random, 72), randomBytes(random, 65))};
+            TXOutput[] outputs = {new TXOutput(i, randomBytes(random, 20)), new TXOutput(i + 1, randomBytes(random, 20))};
+            transactions[i] = new Transaction(randomBytes(random, 32), inputs, outputs, System.currentTimeMillis());
+        }
+        return new Block(Hash256.of(new byte[32]), Hash256.ZERO, transactions, System.currentTimeMillis(), 0, 1, new byte[32]);
+    }
+
+    static byte[] randomBytes(Random random, int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(KryoSerializerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
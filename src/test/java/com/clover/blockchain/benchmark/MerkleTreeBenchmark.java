@@ -0,0 +1,61 @@
+package com.clover.blockchain.benchmark;
+
+import com.clover.blockchain.transaction.LegacyMerkleTree;
+import com.clover.blockchain.transaction.MerkleTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merkle root of blocks with 1, 1k and 100k transactions, flat tree against the former node based tree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MerkleTreeBenchmark {
+
+    @Param({"1", "1000", "100000"})
+    private int transactions;
+
+    private byte[][] txIds;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        txIds = new byte[transactions][32];
+        for (byte[] txId : txIds) {
+            random.nextBytes(txId);
+        }
+    }
+
+    @Benchmark
+    public byte[] flatTree() {
+        return new MerkleTree(txIds).getRoot();
+    }
+
+    @Benchmark
+    public byte[] legacyTree() {
+        return new LegacyMerkleTree(txIds).getRoot().getHash();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MerkleTreeBenchmark.class.getSimpleName()).build()).run();
+    }
+}
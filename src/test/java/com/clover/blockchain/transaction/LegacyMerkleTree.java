@@ -0,0 +1,117 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.util.LegacyByteUtils;
+import com.google.common.collect.Lists;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.util.List;
+
+/**
+ * The former node based MerkleTree, kept as reference for the flat implementation.
+ */
+public class LegacyMerkleTree {
+    private Node root;
+
+    public Node getRoot() {
+        return root;
+    }
+
+    public LegacyMerkleTree(byte[][] leafHashes) {
+        constructTree(leafHashes);
+    }
+
+    // Build the entire Merkle Tree from the bottom leaf node upwards
+    private void constructTree(byte[][] leafHashes) {
+        if (leafHashes == null || leafHashes.length < 1) {
+            throw new RuntimeException("ERROR:Fail to construct merkle tree ! leafHashes data invalid ! ");
+        }
+        List<Node> parents = bottomLevel(leafHashes);
+        while (parents.size() > 1) {
+            parents = internalLevel(parents);
+        }
+        root = parents.get(0);
+    }
+
+    // build a hirerchy node
+    private List<Node> internalLevel(List<Node> children) {
+        List<Node> parents = Lists.newArrayListWithCapacity(children.size() / 2);
+        for (int i = 0; i < children.size() - 1; i += 2) {
+            Node child1 = children.get(i);
+            Node child2 = children.get(i + 1);
+
+            Node parent = constructInternalNode(child1, child2);
+            parents.add(parent);
+        }
+
+        // 内部节点奇数个，只对left节点进行计算
+        if (children.size() % 2 != 0) {
+            Node child = children.get(children.size() - 1);
+            Node parent = constructInternalNode(child, null);
+            parents.add(parent);
+        }
+
+        return parents;
+    }
+
+    // bottom node construction
+    private List<Node> bottomLevel(byte[][] hashes) {
+        List<Node> parents = Lists.newArrayListWithCapacity(hashes.length / 2);
+
+        for (int i = 0; i < hashes.length - 1; i += 2) {
+            Node leaf1 = constructLeafNode(hashes[i]);
+            Node leaf2 = constructLeafNode(hashes[i + 1]);
+
+            Node parent = constructInternalNode(leaf1, leaf2);
+            parents.add(parent);
+        }
+
+        if (hashes.length % 2 != 0) {
+            Node leaf = constructLeafNode(hashes[hashes.length - 1]);
+            // 奇数个节点的情况，复制最后一个节点
+            Node parent = constructInternalNode(leaf, leaf);
+            parents.add(parent);
+        }
+
+        return parents;
+    }
+
+    // build leaf node
+    private static Node constructLeafNode(byte[] hash) {
+        Node leaf = new Node();
+        leaf.hash = hash;
+        return leaf;
+    }
+
+    // build internal node
+    private Node constructInternalNode(Node leftChild, Node rightChild) {
+        Node parent = new Node();
+        if (rightChild == null) {
+            parent.hash = leftChild.hash;
+        } else {
+            parent.hash = internalHash(leftChild.hash, rightChild.hash);
+        }
+        parent.left = leftChild;
+        parent.right = rightChild;
+        return parent;
+    }
+
+    // calculate internal node hash
+    private byte[] internalHash(byte[] leftChildHash, byte[] rightChildHash) {
+        byte[] mergedBytes = LegacyByteUtils.merge(leftChildHash, rightChildHash);
+        return DigestUtils.sha256(mergedBytes);
+    }
+
+
+    // MerkleTree Node
+    public static class Node {
+        private byte[] hash;
+        private Node left;
+        private Node right;
+
+        public byte[] getHash() {
+            return hash;
+        }
+    }
+
+
+}
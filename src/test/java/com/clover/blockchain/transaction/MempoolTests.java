@@ -0,0 +1,111 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.block.Block;
+import com.clover.blockchain.util.Hash256;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MempoolTests {
+
+    private static final Hash256 FUNDING_TX = Hash256.of(new byte[32]);
+
+    // distinct create times give distinct txids
+    private final AtomicLong createTime = new AtomicLong(1_700_000_000_000L);
+
+    @Test
+    void testDoubleSpendRejected() {
+        Mempool mempool = new Mempool(100, 3600);
+        Transaction first = this.spend(0, 1);
+        mempool.add(first);
+        assertTrue(mempool.isSpent(FUNDING_TX, 0));
+        assertTrue(mempool.isSpent(FUNDING_TX, 1));
+        assertFalse(mempool.isSpent(FUNDING_TX, 2));
+
+        Transaction second = this.spend(1, 2);
+        assertThrows(RuntimeException.class, () -> mempool.add(second));
+        assertNull(mempool.get(Hash256.of(second.getTxId())));
+        // the rejected transaction claimed nothing
+        assertFalse(mempool.isSpent(FUNDING_TX, 2));
+
+        // adding the same transaction again is not a double spend
+        mempool.add(first);
+        assertEquals(1, mempool.size());
+    }
+
+    @Test
+    void testRemoveForBlockReleasesClaims() {
+        Mempool mempool = new Mempool(100, 3600);
+        Transaction mined = this.spend(0);
+        Transaction conflicting = this.spend(1);
+        Transaction unrelated = this.spend(2);
+        mempool.add(mined);
+        mempool.add(conflicting);
+        mempool.add(unrelated);
+
+        // the block confirms the first transaction and another one spending the output claimed by the second
+        mempool.removeForBlock(this.block(mined, this.spend(1)));
+        assertNull(mempool.get(Hash256.of(mined.getTxId())));
+        assertNull(mempool.get(Hash256.of(conflicting.getTxId())));
+        assertNotNull(mempool.get(Hash256.of(unrelated.getTxId())));
+        assertFalse(mempool.isSpent(FUNDING_TX, 0));
+        assertFalse(mempool.isSpent(FUNDING_TX, 1));
+        assertTrue(mempool.isSpent(FUNDING_TX, 2));
+
+        // the released outputs can be claimed again
+        mempool.add(this.spend(0, 1));
+        assertEquals(2, mempool.size());
+    }
+
+    @Test
+    void testEvictionBySizeReleasesClaims() throws InterruptedException {
+        Mempool mempool = new Mempool(2, 3600);
+        Transaction oldest = this.spend(0);
+        mempool.add(oldest);
+        Thread.sleep(2);
+        mempool.add(this.spend(1));
+        Thread.sleep(2);
+        mempool.add(this.spend(2));
+
+        assertEquals(2, mempool.size());
+        assertNull(mempool.get(Hash256.of(oldest.getTxId())));
+        assertFalse(mempool.isSpent(FUNDING_TX, 0));
+        assertTrue(mempool.isSpent(FUNDING_TX, 1));
+        assertTrue(mempool.isSpent(FUNDING_TX, 2));
+    }
+
+    @Test
+    void testEvictionByAgeReleasesClaims() throws InterruptedException {
+        Mempool mempool = new Mempool(100, 0);
+        mempool.add(this.spend(0, 1));
+        Thread.sleep(2);
+
+        assertEquals(1, mempool.evictExpired());
+        assertEquals(0, mempool.size());
+        assertFalse(mempool.isSpent(FUNDING_TX, 0));
+        assertFalse(mempool.isSpent(FUNDING_TX, 1));
+        assertEquals(List.of(), mempool.selectTransactions(10));
+    }
+
+    // unsigned transaction spending the given outputs of the funding transaction, the mempool does not verify
+    private Transaction spend(int... outIndexes) {
+        TXInput[] inputs = new TXInput[outIndexes.length];
+        for (int i = 0; i < outIndexes.length; i++) {
+            inputs[i] = new TXInput(FUNDING_TX.getBytes(), outIndexes[i], null, null);
+        }
+        TXOutput[] outputs = {new TXOutput(1, new byte[20])};
+        return new Transaction(null, inputs, outputs, createTime.getAndIncrement());
+    }
+
+    private Block block(Transaction... transactions) {
+        return new Block(Hash256.of(new byte[32]), Hash256.ZERO, transactions, 0, 0, 1, null);
+    }
+}
@@ -0,0 +1,65 @@
+package com.clover.blockchain.transaction;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MerkleTreeTests {
+
+    @Test
+    void testSameRootsAsLegacyTree() {
+        Random random = new Random(42);
+        // small counts cover every odd/even combination of the first levels, the large ones the parallel hashing
+        int[] counts = new int[70];
+        for (int i = 0; i < 64; i++) {
+            counts[i] = i + 1;
+        }
+        counts[64] = 4095;
+        counts[65] = 8192;
+        counts[66] = 8193;
+        counts[67] = 10_001;
+        counts[68] = 20_000;
+        counts[69] = 100_000;
+        for (int count : counts) {
+            byte[][] leaves = randomLeaves(random, count);
+            assertArrayEquals(new LegacyMerkleTree(leaves).getRoot().getHash(), new MerkleTree(leaves).getRoot(),
+                    "root differs for " + count + " leaves");
+        }
+    }
+
+    @Test
+    void testProofsVerify() {
+        Random random = new Random(7);
+        for (int count : new int[]{1, 2, 3, 5, 8, 13, 100, 1001}) {
+            byte[][] leaves = randomLeaves(random, count);
+            MerkleTree tree = new MerkleTree(leaves);
+            for (int i = 0; i < count; i++) {
+                MerkleProof proof = tree.getProof(i);
+                assertTrue(proof.verify(tree.getRoot()), "proof fails for leaf " + i + " of " + count);
+                assertTrue(proof.getSteps().size() <= tree.getDepth());
+            }
+            MerkleProof forged = tree.getProof(0);
+            forged.setTxId(Hex.encodeHexString(randomLeaves(random, 1)[0]));
+            assertFalse(forged.verify(tree.getRoot()));
+        }
+    }
+
+    @Test
+    void testEmptyTreeRejected() {
+        assertThrows(RuntimeException.class, () -> new MerkleTree(new byte[0][]));
+    }
+
+    static byte[][] randomLeaves(Random random, int count) {
+        byte[][] leaves = new byte[count][32];
+        for (byte[] leaf : leaves) {
+            random.nextBytes(leaf);
+        }
+        return leaves;
+    }
+}
@@ -0,0 +1,133 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.util.CryptoUtils;
+import com.clover.blockchain.util.HashUtils;
+import com.clover.blockchain.wallet.Wallet;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SignatureVerifierTests {
+
+    private final Wallet wallet = new Wallet();
+
+    @BeforeEach
+    void setUpVerifier() {
+        new SignatureVerifier(4, 1000);
+    }
+
+    @Test
+    void testFindInvalidReturnsFirstBadInput() throws Exception {
+        List<SignatureCheck> checks = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            checks.add(this.signedCheck(i));
+        }
+        assertNull(SignatureVerifier.findInvalid(checks));
+
+        // signatures over another hash at inputs 5 and 11
+        checks.set(5, this.withSignature(checks.get(5), checks.get(4).getSignature()));
+        checks.set(11, this.withSignature(checks.get(11), checks.get(10).getSignature()));
+        for (int round = 0; round < 20; round++) {
+            assertEquals(5, SignatureVerifier.findInvalid(checks).getInputIndex());
+        }
+        assertSame(checks.get(11), SignatureVerifier.findInvalid(checks.subList(6, 16)));
+        assertSame(checks.get(5), SignatureVerifier.findInvalid(checks.subList(5, 6)));
+    }
+
+    @Test
+    void testFindInvalidStopsEarly() {
+        AtomicInteger verified = new AtomicInteger();
+        List<SignatureCheck> checks = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            checks.add(new CountingCheck(i, i != 0, verified));
+        }
+
+        assertEquals(0, SignatureVerifier.findInvalid(checks).getInputIndex());
+        // only the checks already running when the first input failed are completed
+        assertTrue(verified.get() < 100, "checks run after the first invalid input: " + verified.get());
+    }
+
+    @Test
+    void testCachedSignatureNotReusedForOtherSplit() throws Exception {
+        SignatureCheck check = this.signedCheck(0);
+        assertNull(SignatureVerifier.findInvalid(List.of(check)));
+        long hits = SignatureVerifier.getCacheStats().getHits();
+
+        // same concatenated bytes, with the boundaries between sighash, public key and signature moved
+        byte[] sigHash = check.getSigHash();
+        byte[] pubKey = check.getPubKey();
+        byte[] signature = check.getSignature();
+        List<SignatureCheck> splits = List.of(
+                new SignatureCheck(check.getTxId(), 0, concat(sigHash, head(pubKey, 1)), tail(pubKey, 1), signature),
+                new SignatureCheck(check.getTxId(), 0, head(sigHash, sigHash.length - 1),
+                        concat(tail(sigHash, sigHash.length - 1), pubKey), signature),
+                new SignatureCheck(check.getTxId(), 0, sigHash, concat(pubKey, head(signature, 1)), tail(signature, 1)),
+                new SignatureCheck(check.getTxId(), 0, sigHash, head(pubKey, pubKey.length - 1),
+                        concat(tail(pubKey, pubKey.length - 1), signature)));
+        for (SignatureCheck split : splits) {
+            assertSame(split, SignatureVerifier.findInvalid(List.of(split)));
+        }
+        assertEquals(hits, SignatureVerifier.getCacheStats().getHits());
+
+        // an equal copy of the original check is still served from the cache
+        assertNull(SignatureVerifier.findInvalid(List.of(this.withSignature(check, signature.clone()))));
+        assertEquals(hits + 1, SignatureVerifier.getCacheStats().getHits());
+    }
+
+    private SignatureCheck signedCheck(int inputIndex) throws Exception {
+        byte[] sigHash = HashUtils.sha256().putInt(inputIndex).digest();
+        return new SignatureCheck(new byte[32], inputIndex, sigHash, wallet.getPublicKey(),
+                CryptoUtils.sign(wallet.getPrivateKey(), sigHash));
+    }
+
+    private SignatureCheck withSignature(SignatureCheck check, byte[] signature) {
+        return new SignatureCheck(check.getTxId(), check.getInputIndex(), check.getSigHash(), check.getPubKey(), signature);
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        return ByteBuffer.allocate(first.length + second.length).put(first).put(second).array();
+    }
+
+    private static byte[] head(byte[] bytes, int length) {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private static byte[] tail(byte[] bytes, int from) {
+        return Arrays.copyOfRange(bytes, from, bytes.length);
+    }
+
+    // takes a millisecond per check, like an ECDSA verification, and counts the checks run
+    private static class CountingCheck extends SignatureCheck {
+
+        private final boolean valid;
+
+        private final AtomicInteger verified;
+
+        CountingCheck(int inputIndex, boolean valid, AtomicInteger verified) {
+            super(new byte[32], inputIndex, ByteBuffer.allocate(4).putInt(inputIndex).array(), new byte[65], new byte[70]);
+            this.valid = valid;
+            this.verified = verified;
+        }
+
+        @Override
+        public boolean verify() {
+            verified.incrementAndGet();
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return valid;
+        }
+    }
+}
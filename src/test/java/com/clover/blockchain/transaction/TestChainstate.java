@@ -0,0 +1,141 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.Application;
+import com.clover.blockchain.block.Block;
+import com.clover.blockchain.block.BlockHeader;
+import com.clover.blockchain.block.HeaderChain;
+import com.clover.blockchain.config.RocksDBConfig;
+import com.clover.blockchain.kryo.KryoSerializer;
+import com.clover.blockchain.service.BlockWriteBatch;
+import com.clover.blockchain.service.RocksDBService;
+import com.clover.blockchain.util.Hash256;
+import com.clover.blockchain.util.HashUtils;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.TransactionLogIterator;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RocksDB in a test directory with the block store, header chain and chainstate services on top, without Spring.
+ * Blocks are connected like Blockchain#addBlock does, minus the proof of work.
+ * Closing it without flushing a cache leaves the database as a killed node would.
+ */
+class TestChainstate implements AutoCloseable {
+
+    private final RocksDBConfig rocksDBConfig = new RocksDBConfig();
+
+    final RocksDB rocksDB;
+
+    final RocksDBService rocksDBService;
+
+    final HeaderChain headerChain;
+
+    private long createTime = 1_700_000_000_000L;
+
+    TestChainstate(Path directory) {
+        new KryoSerializer(() -> new Application().kryo());
+        rocksDBConfig.setRocksDBDirectory(directory.toString());
+        rocksDBConfig.setCreateIfMissing(true);
+        rocksDBConfig.setBlockBucketKey("blocks");
+        rocksDBConfig.setChainstateBucketKey("chainstate");
+        rocksDBConfig.setMetaBucketKey("meta");
+        rocksDBConfig.setTxIndexBucketKey("txindex");
+        rocksDBConfig.setHeightBucketKey("height");
+        rocksDBConfig.setAddrIndexBucketKey("addrindex");
+        rocksDBConfig.setHeaderBucketKey("headers");
+        rocksDBConfig.setLastBlockKey("l");
+        rocksDBConfig.setUtxoBestBlockKey("u");
+        rocksDBConfig.setBlockCacheMaxBytes(1024 * 1024);
+        rocksDB = rocksDBConfig.rocksDB();
+        rocksDBService = new RocksDBService(rocksDB, rocksDBConfig);
+        headerChain = new HeaderChain(rocksDBService);
+        headerChain.load();
+    }
+
+    // cache over this database, with blocks connected after its last flush replayed
+    UTXOCache newCache(long maxBytes, int flushIntervalBlocks) {
+        UTXOCache utxoCache = new UTXOCache(rocksDBService, headerChain, maxBytes, flushIntervalBlocks);
+        utxoCache.replay();
+        return utxoCache;
+    }
+
+    // block of the transactions on top of the tip, its hash stands in for a proof of work
+    Block nextBlock(Transaction... transactions) {
+        BlockHeader tip = headerChain.getTip();
+        long height = tip == null ? 0 : tip.getHeight() + 1;
+        Block block = new Block(null, tip == null ? Hash256.ZERO : tip.getHash(), transactions,
+                1_700_000_000L + height, 0, height, null);
+        block.setMerkleRoot(block.hashTransaction());
+        block.setHash(Hash256.of(HashUtils.sha256().update(block.getMerkleRoot()).putLong(height).digest()));
+        return block;
+    }
+
+    // store the block and apply it to the cache, in the order of Blockchain#addBlock
+    Block connect(UTXOCache utxoCache, Transaction... transactions) {
+        Block block = this.nextBlock(transactions);
+        BlockHeader header = block.toHeader();
+        header.setPowValid(true);
+        try (BlockWriteBatch batch = rocksDBService.newBlockWriteBatch()) {
+            batch.putBlock(block);
+            batch.putBlockHeader(header);
+            batch.putLastBlockHash(block.getHash());
+            batch.putBlockHeight(block);
+            batch.putTxLocations(block);
+            batch.commit();
+        }
+        utxoCache.connectBlock(block);
+        headerChain.append(header);
+        return block;
+    }
+
+    Transaction coinbase(byte[] pubKeyHash, int value) {
+        TXInput input = new TXInput(new byte[]{}, -1, null, ("coinbase " + createTime).getBytes());
+        return new Transaction(null, new TXInput[]{input}, new TXOutput[]{new TXOutput(value, pubKeyHash)}, createTime++);
+    }
+
+    // unsigned, the cache does not verify signatures
+    Transaction spend(Transaction prevTx, int outIndex, TXOutput... outputs) {
+        TXInput input = new TXInput(prevTx.getTxId(), outIndex, null, null);
+        return new Transaction(null, new TXInput[]{input}, outputs, createTime++);
+    }
+
+    // the chainstate on disk, value and public key hash by outpoint
+    Map<OutPoint, String> diskUTXOs() {
+        Map<OutPoint, String> utxos = new HashMap<>();
+        rocksDBService.iterateUTXOs((txId, outIndex, txOutput) -> {
+            utxos.put(new OutPoint(txId, outIndex), describe(txOutput));
+            return true;
+        });
+        return utxos;
+    }
+
+    static String describe(TXOutput txOutput) {
+        return txOutput.getValue() + "@" + txOutput.pubKeyHashHex();
+    }
+
+    long sequenceNumber() {
+        return rocksDB.getLatestSequenceNumber();
+    }
+
+    // number of operations of every write batch committed after the sequence number, in commit order
+    List<Integer> batchesSince(long sequenceNumber) throws RocksDBException {
+        List<Integer> batches = new ArrayList<>();
+        try (TransactionLogIterator iterator = rocksDB.getUpdatesSince(sequenceNumber + 1)) {
+            for (; iterator.isValid(); iterator.next()) {
+                iterator.status();
+                batches.add(iterator.getBatch().writeBatch().count());
+            }
+        }
+        return batches;
+    }
+
+    @Override
+    public void close() {
+        rocksDBConfig.closeRocksDB();
+    }
+}
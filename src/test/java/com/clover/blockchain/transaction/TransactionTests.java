@@ -0,0 +1,116 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.Application;
+import com.clover.blockchain.kryo.KryoSerializer;
+import com.clover.blockchain.util.Hash256;
+import com.clover.blockchain.wallet.Wallet;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransactionTests {
+
+    private final Wallet sender = new Wallet();
+
+    private final Wallet receiver = new Wallet();
+
+    // pays 10 and 5 to the sender, spent by the transactions under test
+    private final Transaction prevTx = new Transaction(null,
+            new TXInput[]{new TXInput(new byte[]{}, -1, null, "prev".getBytes())},
+            new TXOutput[]{TXOutput.newTXOutput(10, sender.getAddress()), TXOutput.newTXOutput(5, sender.getAddress())},
+            1_700_000_000_000L);
+
+    @BeforeAll
+    static void setUpKryo() {
+        new KryoSerializer(() -> new Application().kryo());
+    }
+
+    @Test
+    void testTxIdStableAcrossKryoRoundTrip() throws Exception {
+        Transaction tx = this.newSpend();
+        byte[] unsignedTxId = tx.hash();
+        tx.sign(sender.getPrivateKey(), this.prevTxMap());
+        // signatures are not part of the txid
+        assertArrayEquals(unsignedTxId, tx.getTxId());
+
+        Transaction copy = (Transaction) KryoSerializer.deserialize(KryoSerializer.serialize(tx));
+        assertArrayEquals(tx.getTxId(), copy.getTxId());
+        copy.setTxId(null);
+        assertArrayEquals(tx.getTxId(), copy.getTxId());
+    }
+
+    @Test
+    void testTxIdCoversEveryField() {
+        byte[] txId = this.newSpend().hash();
+        List<Consumer<Transaction>> changes = List.of(
+                tx -> tx.getInputs()[1].getTxId()[0] ^= 1,
+                tx -> tx.getInputs()[1].setTxOutputIndex(2),
+                tx -> tx.getInputs()[0].setPubKey(receiver.getPublicKey()),
+                tx -> tx.getOutputs()[0].setValue(13),
+                tx -> tx.getOutputs()[1].getPubKeyHash()[19] ^= 1,
+                tx -> tx.setCreateTime(tx.getCreateTime() + 1),
+                tx -> tx.setOutputs(new TXOutput[]{tx.getOutputs()[0]}));
+        for (int i = 0; i < changes.size(); i++) {
+            Transaction tx = this.newSpend();
+            changes.get(i).accept(tx);
+            assertFalse(Hash256.of(txId).equals(Hash256.of(tx.hash())), "txid unchanged by change " + i);
+        }
+    }
+
+    @Test
+    void testSigHashDiffersPerInput() {
+        Transaction tx = this.newSpend();
+        byte[] pubKeyHash = prevTx.getOutputs()[0].getPubKeyHash();
+        byte[] first = tx.sigHash(0, pubKeyHash);
+        byte[] second = tx.sigHash(1, pubKeyHash);
+        assertFalse(Hash256.of(first).equals(Hash256.of(second)));
+        assertFalse(Hash256.of(first).equals(Hash256.of(tx.hash())));
+        assertArrayEquals(first, this.newSpend().sigHash(0, pubKeyHash));
+    }
+
+    @Test
+    void testSignedTransactionPassesSignatureChecks() throws Exception {
+        Transaction tx = this.newSpend();
+        tx.sign(sender.getPrivateKey(), this.prevTxMap());
+
+        List<SignatureCheck> checks = tx.signatureChecks(this.prevTxMap());
+        assertEquals(2, checks.size());
+        for (int i = 0; i < checks.size(); i++) {
+            assertNotNull(tx.getInputs()[i].getSignature());
+            assertEquals(i, checks.get(i).getInputIndex());
+            assertTrue(checks.get(i).verify(), "signature of input " + i + " rejected");
+        }
+
+        // the signatures no longer match once an output is changed
+        tx.getOutputs()[0].setValue(14);
+        for (SignatureCheck check : tx.signatureChecks(this.prevTxMap())) {
+            assertFalse(check.verify());
+        }
+    }
+
+    // spends both outputs of prevTx, 12 to the receiver and 3 back to the sender
+    private Transaction newSpend() {
+        byte[] prevTxId = prevTx.getTxId();
+        return new Transaction(null,
+                new TXInput[]{
+                        new TXInput(prevTxId.clone(), 0, null, sender.getPublicKey()),
+                        new TXInput(prevTxId.clone(), 1, null, sender.getPublicKey())},
+                new TXOutput[]{
+                        TXOutput.newTXOutput(12, receiver.getAddress()),
+                        TXOutput.newTXOutput(3, sender.getAddress())},
+                1_700_000_000_001L);
+    }
+
+    private Map<Hash256, Transaction> prevTxMap() {
+        return Map.of(Hash256.of(prevTx.getTxId()), prevTx);
+    }
+}
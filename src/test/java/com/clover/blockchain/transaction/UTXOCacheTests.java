@@ -0,0 +1,161 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.block.Block;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class UTXOCacheTests {
+
+    // memory budget no test block reaches
+    private static final long NO_MEMORY_LIMIT = Long.MAX_VALUE;
+
+    private static final byte[] ALICE = pubKeyHash(1);
+
+    private static final byte[] BOB = pubKeyHash(2);
+
+    private static final byte[] CAROL = pubKeyHash(3);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testFlushAfterBlockInterval() {
+        try (TestChainstate chain = new TestChainstate(directory)) {
+            UTXOCache utxoCache = chain.newCache(NO_MEMORY_LIMIT, 3);
+            Transaction first = chain.coinbase(ALICE, 10);
+            chain.connect(utxoCache, first);
+            chain.connect(utxoCache, chain.coinbase(ALICE, 10));
+            assertNull(chain.rocksDBService.getUTXOBestBlockHash());
+            assertNull(chain.rocksDBService.getUTXO(first.getTxId(), 0));
+            assertNotNull(utxoCache.getUTXO(first.getTxId(), 0));
+
+            Block third = chain.connect(utxoCache, chain.coinbase(ALICE, 10));
+            assertEquals(third.getHash(), chain.rocksDBService.getUTXOBestBlockHash());
+            assertEquals(3, chain.diskUTXOs().size());
+            assertNotNull(chain.rocksDBService.getUTXO(first.getTxId(), 0));
+            assertEquals(0, utxoCache.getStats().getCachedCoins());
+        }
+    }
+
+    @Test
+    void testFlushOverMemoryBudget() {
+        try (TestChainstate chain = new TestChainstate(directory)) {
+            // a coin is estimated at 256 bytes, the second cached coin goes over the budget
+            UTXOCache utxoCache = chain.newCache(300, 100);
+            chain.connect(utxoCache, chain.coinbase(ALICE, 10));
+            assertNull(chain.rocksDBService.getUTXOBestBlockHash());
+            assertEquals(1, utxoCache.getStats().getCachedCoins());
+
+            Block second = chain.connect(utxoCache, chain.coinbase(BOB, 10));
+            assertEquals(second.getHash(), chain.rocksDBService.getUTXOBestBlockHash());
+            assertEquals(2, chain.diskUTXOs().size());
+            assertEquals(1, utxoCache.getStats().getFlushCount());
+        }
+    }
+
+    @Test
+    void testBestBlockWrittenInSameBatchAsCoins() throws Exception {
+        try (TestChainstate chain = new TestChainstate(directory)) {
+            UTXOCache utxoCache = chain.newCache(NO_MEMORY_LIMIT, 100);
+            Transaction coinbase = chain.coinbase(ALICE, 10);
+            chain.connect(utxoCache, coinbase);
+            utxoCache.flush();
+            Block block = chain.connect(utxoCache, chain.spend(coinbase, 0,
+                    new TXOutput(4, BOB), new TXOutput(6, ALICE)));
+
+            long sequenceNumber = chain.sequenceNumber();
+            utxoCache.flush();
+            // one batch: chainstate and address index entry for each of the two new coins and for the spent one,
+            // plus the best block marker
+            assertEquals(List.of(2 * 3 + 1), chain.batchesSince(sequenceNumber));
+            assertEquals(block.getHash(), chain.rocksDBService.getUTXOBestBlockHash());
+            assertNull(chain.rocksDBService.getUTXO(coinbase.getTxId(), 0));
+            assertEquals(2, chain.diskUTXOs().size());
+        }
+    }
+
+    @Test
+    void testReplayAfterUnflushedShutdown() {
+        Block tip;
+        Map<OutPoint, String> expected;
+        try (TestChainstate chain = new TestChainstate(directory)) {
+            UTXOCache utxoCache = chain.newCache(NO_MEMORY_LIMIT, 100);
+            Transaction genesis = chain.coinbase(ALICE, 50);
+            Block flushed = chain.connect(utxoCache, genesis);
+            utxoCache.flush();
+
+            Transaction toBob = chain.spend(genesis, 0, new TXOutput(20, BOB), new TXOutput(30, ALICE));
+            Transaction reward = chain.coinbase(ALICE, 10);
+            chain.connect(utxoCache, toBob, reward);
+            Transaction toCarol = chain.spend(toBob, 0, new TXOutput(6, CAROL), new TXOutput(14, ALICE));
+            chain.connect(utxoCache, toCarol);
+            Transaction bobReward = chain.coinbase(BOB, 10);
+            chain.connect(utxoCache, bobReward);
+            Transaction change = chain.spend(toCarol, 1, new TXOutput(14, ALICE));
+            tip = chain.connect(utxoCache, change);
+
+            // the node dies: the cached blocks 1 to 4 are lost, the chainstate on disk is still at block 0
+            assertEquals(flushed.getHash(), chain.rocksDBService.getUTXOBestBlockHash());
+            expected = Map.of(
+                    new OutPoint(toBob.getTxId(), 1), "30@" + hex(ALICE),
+                    new OutPoint(reward.getTxId(), 0), "10@" + hex(ALICE),
+                    new OutPoint(toCarol.getTxId(), 0), "6@" + hex(CAROL),
+                    new OutPoint(bobReward.getTxId(), 0), "10@" + hex(BOB),
+                    new OutPoint(change.getTxId(), 0), "14@" + hex(ALICE));
+        }
+
+        try (TestChainstate chain = new TestChainstate(directory)) {
+            UTXOCache utxoCache = chain.newCache(NO_MEMORY_LIMIT, 100);
+            assertEquals(tip.getHash(), chain.rocksDBService.getUTXOBestBlockHash());
+            assertEquals(expected, chain.diskUTXOs());
+            // the address index was replayed with the chainstate
+            assertEquals(54, balance(utxoCache, ALICE));
+            assertEquals(10, balance(utxoCache, BOB));
+            assertEquals(6, balance(utxoCache, CAROL));
+        }
+    }
+
+    @Test
+    void testFreshCoinSpentBeforeFlushNeverReachesDisk() throws Exception {
+        try (TestChainstate chain = new TestChainstate(directory)) {
+            UTXOCache utxoCache = chain.newCache(NO_MEMORY_LIMIT, 100);
+            Transaction coinbase = chain.coinbase(ALICE, 10);
+            chain.connect(utxoCache, coinbase);
+            Transaction spend = chain.spend(coinbase, 0, new TXOutput(10, BOB));
+            chain.connect(utxoCache, spend);
+
+            long sequenceNumber = chain.sequenceNumber();
+            utxoCache.flush();
+            // only the coin of the spending transaction and the marker are written, nothing for the spent coinbase
+            assertEquals(List.of(2 + 1), chain.batchesSince(sequenceNumber));
+            assertEquals(Map.of(new OutPoint(spend.getTxId(), 0), "10@" + hex(BOB)), chain.diskUTXOs());
+        }
+    }
+
+    private static long balance(UTXOCache utxoCache, byte[] pubKeyHash) {
+        long[] balance = {0};
+        utxoCache.iterateUTXOs(pubKeyHash, (txId, outIndex, txOutput) -> {
+            balance[0] += txOutput.getValue();
+            return true;
+        });
+        return balance[0];
+    }
+
+    private static byte[] pubKeyHash(int owner) {
+        byte[] pubKeyHash = new byte[20];
+        pubKeyHash[0] = (byte) owner;
+        return pubKeyHash;
+    }
+
+    private static String hex(byte[] pubKeyHash) {
+        return new TXOutput(0, pubKeyHash).pubKeyHashHex();
+    }
+}
@@ -0,0 +1,106 @@
+package com.clover.blockchain.transaction;
+
+import com.clover.blockchain.block.Block;
+import com.clover.blockchain.util.Hash256;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UTXOReindexerTests {
+
+    // more blocks than one decode batch of the reindexer
+    private static final int BLOCKS = 300;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReindexMatchesIncrementalChainstate() {
+        try (TestChainstate chain = new TestChainstate(directory)) {
+            UTXOCache utxoCache = chain.newCache(Long.MAX_VALUE, 7);
+            UTXOReindexer utxoReindexer = new UTXOReindexer(chain.rocksDBService, chain.headerChain, utxoCache, 3);
+            try {
+                List<byte[]> owners = List.of(pubKeyHash(1), pubKeyHash(2), pubKeyHash(3), pubKeyHash(4));
+                Transaction[] unspent = new Transaction[owners.size()];
+                Block tip = null;
+                for (int height = 0; height < BLOCKS; height++) {
+                    int owner = height % owners.size();
+                    Transaction coinbase = chain.coinbase(owners.get(owner), 100);
+                    Transaction previous = unspent[owner];
+                    if (previous == null) {
+                        tip = chain.connect(utxoCache, coinbase);
+                    } else {
+                        // move the previous coins of the owner to the next owner, keeping one as change
+                        int value = previous.getOutputs()[previous.getOutputs().length - 1].getValue();
+                        Transaction transfer = chain.spend(previous, previous.getOutputs().length - 1,
+                                new TXOutput(1, owners.get((owner + 1) % owners.size())),
+                                new TXOutput(value - 1, owners.get(owner)));
+                        tip = chain.connect(utxoCache, coinbase, transfer);
+                        unspent[owner] = transfer;
+                        continue;
+                    }
+                    unspent[owner] = coinbase;
+                }
+                utxoCache.flush();
+                Map<OutPoint, String> incremental = chain.diskUTXOs();
+                Map<ByteBuffer, Long> incrementalBalances = balances(utxoCache, utxoReindexer, owners);
+
+                // wipe the chainstate, then rebuild it from the blocks alone
+                utxoCache.reload(Map.of(), Hash256.ZERO, utxoReindexer.getPool());
+                assertTrue(chain.diskUTXOs().isEmpty());
+                utxoReindexer.reindex();
+
+                assertEquals(tip.getHash(), chain.rocksDBService.getUTXOBestBlockHash());
+                assertEquals(BLOCKS, utxoReindexer.getProgress().getProcessedBlocks());
+                assertEquals(incremental, chain.diskUTXOs());
+                assertEquals(incrementalBalances, balances(utxoCache, utxoReindexer, owners));
+            } finally {
+                utxoReindexer.shutdown();
+            }
+            assertTrue(utxoReindexer.getPool().isShutdown());
+        }
+    }
+
+    @Test
+    void testReindexOfEmptyChainKeepsChainstate() {
+        try (TestChainstate chain = new TestChainstate(directory)) {
+            UTXOCache utxoCache = chain.newCache(Long.MAX_VALUE, 100);
+            UTXOReindexer utxoReindexer = new UTXOReindexer(chain.rocksDBService, chain.headerChain, utxoCache, 0);
+            try {
+                utxoReindexer.reindex();
+                assertNull(chain.rocksDBService.getUTXOBestBlockHash());
+                assertEquals(Runtime.getRuntime().availableProcessors(), utxoReindexer.getPool().getParallelism());
+            } finally {
+                utxoReindexer.shutdown();
+            }
+        }
+    }
+
+    // balances read through the address index, they cover the index as well as the chainstate
+    private static Map<ByteBuffer, Long> balances(UTXOCache utxoCache, UTXOReindexer utxoReindexer, List<byte[]> owners) {
+        Map<ByteBuffer, LongAdder> balances = new HashMap<>();
+        for (byte[] owner : owners) {
+            balances.put(ByteBuffer.wrap(owner), new LongAdder());
+        }
+        utxoCache.sumBalances(balances, utxoReindexer.getPool());
+        Map<ByteBuffer, Long> result = new HashMap<>();
+        balances.forEach((pubKeyHash, balance) -> result.put(pubKeyHash, balance.sum()));
+        return result;
+    }
+
+    private static byte[] pubKeyHash(int owner) {
+        byte[] pubKeyHash = new byte[20];
+        pubKeyHash[0] = (byte) (owner * 64);
+        return pubKeyHash;
+    }
+}
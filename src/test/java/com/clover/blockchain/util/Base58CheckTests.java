@@ -0,0 +1,46 @@
+package com.clover.blockchain.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Base58CheckTests {
+
+    @Test
+    void testSameEncodingAsLegacyCodec() {
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            byte[] data = new byte[random.nextInt(40)];
+            random.nextBytes(data);
+            // leading zero bytes map to leading '1' characters
+            for (int j = random.nextInt(4); j > 0 && j <= data.length; j--) {
+                data[j - 1] = 0;
+            }
+            String encoded = Base58Check.rawBytesToBase58(data);
+            assertEquals(LegacyBase58Check.rawBytesToBase58(data), encoded);
+            assertArrayEquals(LegacyBase58Check.base58ToRawBytes(encoded), Base58Check.base58ToRawBytes(encoded));
+            assertArrayEquals(data, Base58Check.base58ToRawBytes(encoded));
+        }
+    }
+
+    @Test
+    void testChecksumVerified() {
+        byte[] payload = new byte[21];
+        new Random(7).nextBytes(payload);
+        payload[0] = 0;
+        String address = Base58Check.bytesToBase58(payload);
+        assertArrayEquals(payload, Base58Check.base58ToBytes(address));
+        // a second decode comes from the cache
+        assertArrayEquals(payload, Base58Check.base58ToBytes(address));
+
+        char last = address.charAt(address.length() - 1);
+        String corrupted = address.substring(0, address.length() - 1) + (last == 'z' ? 'y' : 'z');
+        assertThrows(IllegalArgumentException.class, () -> Base58Check.base58ToBytes(corrupted));
+        assertThrows(IllegalArgumentException.class, () -> Base58Check.base58ToBytes(corrupted));
+        assertThrows(IllegalArgumentException.class, () -> Base58Check.base58ToBytes("0OIl"));
+    }
+}
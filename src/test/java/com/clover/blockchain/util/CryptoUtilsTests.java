@@ -0,0 +1,40 @@
+package com.clover.blockchain.util;
+
+import org.bouncycastle.jcajce.provider.asymmetric.ec.BCECPublicKey;
+import org.junit.jupiter.api.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CryptoUtilsTests {
+
+    @Test
+    void testUncompressedKeyVerifies() throws Exception {
+        KeyPair keyPair = CryptoUtils.newKeyPair();
+        byte[] pubKey = ((BCECPublicKey) keyPair.getPublic()).getQ().getEncoded(false);
+        byte[] data = HashUtils.sha256().putInt(1).digest();
+
+        assertEquals(CryptoUtils.PUBLIC_KEY_LENGTH, pubKey.length);
+        assertTrue(CryptoUtils.verify(pubKey, data, CryptoUtils.sign(keyPair.getPrivate(), data)));
+    }
+
+    @Test
+    void testOtherEncodingsRejected() throws Exception {
+        KeyPair keyPair = CryptoUtils.newKeyPair();
+        byte[] data = HashUtils.sha256().putInt(2).digest();
+        byte[] signature = CryptoUtils.sign(keyPair.getPrivate(), data);
+        // the same point, compressed to 33 bytes, is a valid encoding for the curve but not for transactions
+        byte[] compressed = ((BCECPublicKey) keyPair.getPublic()).getQ().getEncoded(true);
+        byte[] hybrid = ((BCECPublicKey) keyPair.getPublic()).getQ().getEncoded(false);
+        hybrid[0] = (byte) (0x06 | (compressed[0] & 1));
+
+        assertEquals(33, compressed.length);
+        assertThrows(GeneralSecurityException.class, () -> CryptoUtils.verify(compressed, data, signature));
+        assertThrows(GeneralSecurityException.class, () -> CryptoUtils.verify(hybrid, data, signature));
+        assertThrows(GeneralSecurityException.class, () -> CryptoUtils.publicKey(new byte[0]));
+    }
+}
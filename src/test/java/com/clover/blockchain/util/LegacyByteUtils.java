@@ -0,0 +1,20 @@
+package com.clover.blockchain.util;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+/**
+ * The former boxing ByteUtils.merge, kept as reference for HashUtils.
+ */
+public class LegacyByteUtils {
+
+    public static byte[] merge(byte[]... bytes) {
+        Stream<Byte> stream = Stream.of();
+        for (byte[] b : bytes) {
+            stream = Stream.concat(stream, Arrays.stream(ArrayUtils.toObject(b)));
+        }
+        return ArrayUtils.toPrimitive(stream.toArray(Byte[]::new));
+    }
+}
@@ -0,0 +1,106 @@
+package com.clover.blockchain.wallet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.SealedObject;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.FileOutputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WalletUtilsTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testTornTailDropped() throws Exception {
+        WalletUtils walletUtils = new WalletUtils(directory);
+        Wallet first = walletUtils.createWallet();
+        Wallet second = walletUtils.createWallet();
+        Path logFile = directory.resolve("wallet.log");
+        long intactLength = Files.size(logFile);
+        Wallet third = walletUtils.createWallet();
+
+        // a crash in the middle of the last append leaves part of its record behind
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 10);
+        }
+
+        WalletUtils reloaded = new WalletUtils(directory);
+        assertEquals(Set.of(first.getAddress(), second.getAddress()), reloaded.getAddresses());
+        assertArrayEquals(first.getPublicKey(), reloaded.getWallet(first.getAddress()).getPublicKey());
+        assertThrows(RuntimeException.class, () -> reloaded.getWallet(third.getAddress()));
+        assertEquals(intactLength, Files.size(logFile));
+
+        // appending after the truncation yields a readable log again
+        Wallet fourth = reloaded.createWallet();
+        assertEquals(Set.of(first.getAddress(), second.getAddress(), fourth.getAddress()),
+                new WalletUtils(directory).getAddresses());
+    }
+
+    @Test
+    void testSnapshotResetsAppendedRecords() {
+        WalletUtils walletUtils = new WalletUtils(directory);
+        Wallet first = walletUtils.createWallet();
+        Wallet second = walletUtils.createWallet();
+        assertEquals(2, walletUtils.getAppendedRecords());
+
+        walletUtils.compact();
+        assertEquals(0, walletUtils.getAppendedRecords());
+        Wallet third = walletUtils.createWallet();
+
+        // the snapshot holds the first two wallets, only the third one is counted as appended after it
+        WalletUtils reloaded = new WalletUtils(directory);
+        assertEquals(1, reloaded.getAppendedRecords());
+        assertEquals(Set.of(first.getAddress(), second.getAddress(), third.getAddress()), reloaded.getAddresses());
+        assertFalse(Files.exists(directory.resolve("wallet.log.tmp")));
+    }
+
+    @Test
+    void testLegacyFileImported() throws Exception {
+        Wallet legacyWallet = new Wallet();
+        Map<String, Wallet> walletMap = new HashMap<>();
+        walletMap.put(legacyWallet.getAddress(), legacyWallet);
+        writeLegacyFile(directory.resolve("wallet.dat"), new WalletUtils.Wallets(walletMap));
+
+        WalletUtils walletUtils = new WalletUtils(directory);
+        assertEquals(Set.of(legacyWallet.getAddress()), walletUtils.getAddresses());
+        assertFalse(Files.exists(directory.resolve("wallet.dat")));
+        assertTrue(Files.exists(directory.resolve("wallet.dat.imported")));
+        assertEquals(0, walletUtils.getAppendedRecords());
+
+        // the imported wallets live in the log from now on
+        Wallet newWallet = walletUtils.createWallet();
+        WalletUtils reloaded = new WalletUtils(directory);
+        assertEquals(Set.of(legacyWallet.getAddress(), newWallet.getAddress()), reloaded.getAddresses());
+        assertArrayEquals(legacyWallet.getPublicKey(), reloaded.getWallet(legacyWallet.getAddress()).getPublicKey());
+    }
+
+    // wallet.dat as written by earlier versions: the whole map of wallets in one sealed object
+    private static void writeLegacyFile(Path file, WalletUtils.Wallets wallets) throws Exception {
+        SecretKeySpec sks = new SecretKeySpec("2oF@5sC%DNf32y!TmiZi!tG9W5rLaniD".getBytes(), "AES");
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, sks);
+        SealedObject sealedObject = new SealedObject(wallets, cipher);
+        try (ObjectOutputStream outputStream = new ObjectOutputStream(
+                new CipherOutputStream(new FileOutputStream(file.toFile()), cipher))) {
+            outputStream.writeObject(sealedObject);
+        }
+    }
+}